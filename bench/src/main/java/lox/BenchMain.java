@@ -0,0 +1,27 @@
+package lox;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// JMH's command line, with the GC profiler always on, so every result
+// comes with its allocation rate:
+//   java -jar target/benchmarks.jar [jmh options] [benchmark regex]
+// e.g. StageBenchmark.interpret -p workload=fib, or -l to list them.
+public class BenchMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() ||
+                options.shouldListWithParams() || options.shouldListProfilers() ||
+                options.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+            .parent(options)
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
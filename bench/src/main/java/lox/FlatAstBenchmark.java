@@ -0,0 +1,96 @@
+package lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The object tree against the flat arena, on a script made of every
+// workload over and over until it's the given number of megabytes:
+// resolving each with its own resolver, and encoding and decoding one as
+// the other. Setup prints what each takes on the heap, the tree with its
+// tokens and the arena on top of the same tokens.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FlatAstBenchmark {
+    private static final String[] WORKLOADS = { "fib", "binary_trees",
+        "method_call", "properties", "instantiation", "string_equality",
+        "concatenation", "closures", "inheritance" };
+
+    @Param({"1", "50"})
+    public int megabytes;
+
+    private List<Stmt> statements;
+    private FlatAst ast;
+    private int program;
+
+    @Setup
+    public void setUp() {
+        StringBuilder all = new StringBuilder();
+        for (String name : WORKLOADS) all.append(Workload.source(name));
+        StringBuilder source = new StringBuilder();
+        while (source.length() < megabytes << 20) source.append(all);
+
+        long start = used();
+        Diagnostics diagnostics = new Diagnostics();
+        statements = new Parser(new FastScanner(source.toString(), diagnostics)
+            .scanTokens(), diagnostics).parse();
+        Workload.check(diagnostics.hadError(), "flat");
+        source = null;
+        long tree = used() - start;
+
+        ast = new FlatAst();
+        program = new FlatAst.Encoder(ast).encodeStmts(statements);
+        long arena = used() - start - tree;
+        System.out.printf("%n%d MB of source: object tree %.1f MB, arena %.1f MB " +
+            "more, %d nodes%n", megabytes, tree / 1e6, arena / 1e6, ast.nodeCount);
+    }
+
+    private static long used() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public Map<Expr, Integer> resolveTree() {
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        new Resolver(locals, new Diagnostics()).resolve(statements);
+        return locals;
+    }
+
+    @Benchmark
+    public int[] resolveFlat() {
+        FlatResolver resolver = new FlatResolver(ast, new Diagnostics());
+        resolver.resolveList(program);
+        return resolver.depths;
+    }
+
+    @Benchmark
+    public int encode() {
+        return new FlatAst.Encoder(new FlatAst()).encodeStmts(statements);
+    }
+
+    @Benchmark
+    public List<Stmt> decode() {
+        return new FlatAst.Decoder(ast).program(program);
+    }
+}
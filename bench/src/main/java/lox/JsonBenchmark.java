@@ -0,0 +1,66 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The jsonParse native against the parser in resources/json.lox, both
+// called from the same isolate on the same document, of records objects.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlox.memo=off")
+public class JsonBenchmark {
+    @Param({"10", "1000"})
+    public int records;
+
+    private Isolate isolate;
+    private String document;
+
+    @Setup
+    public void setUp() {
+        isolate = new Isolate(new ByteArrayOutputStream());
+        Workload.check(!isolate.run(Workload.resource("json.lox")), "json");
+
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < records; i++) {
+            if (i > 0) builder.append(",\n  ");
+            builder.append("{\"id\": ").append(i)
+                .append(", \"name\": \"record ").append(i)
+                .append("\", \"price\": ").append(i * 1.25)
+                .append(", \"tags\": [\"a\", \"b\", \"c\"], \"active\": ")
+                .append(i % 2 == 0).append(", \"parent\": null}");
+        }
+        document = builder.append("]").toString();
+
+        // The native makes objects with fields, and the Lox parser Maps,
+        // which keep their keys in another order.
+        Object expected = isolate.call("jsonStringify", isolate.call("jsonParse", document));
+        Object actual = isolate.call("jsonStringify", isolate.call("parse", document));
+        Workload.check(expected == null || actual == null ||
+            expected.toString().length() != actual.toString().length(), "json");
+    }
+
+    @Benchmark
+    public Object jsonNative() {
+        return isolate.call("jsonParse", document);
+    }
+
+    @Benchmark
+    public Object jsonLox() {
+        return isolate.call("parse", document);
+    }
+}
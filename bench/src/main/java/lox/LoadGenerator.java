@@ -0,0 +1,79 @@
+package lox;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+// A load generator for trying an EventLoop server out: opens connections
+// to localhost:port, and on each one sends a line and waits for as many
+// bytes back, requests times over.
+//   java -cp target/benchmarks.jar lox.LoadGenerator port connections requests
+public class LoadGenerator {
+    private static final int READ_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int connections = Integer.parseInt(args[1]);
+        int requests = Integer.parseInt(args[2]);
+        byte[] request = "ping\n".getBytes(StandardCharsets.UTF_8);
+        InetSocketAddress address = new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), port);
+
+        long start = System.nanoTime();
+        Selector selector = Selector.open();
+        // Per connection: requests left, and bytes still expected back.
+        int[][] state = new int[connections][];
+        int opened = 0;
+        int done = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        while (done < connections) {
+            // Open connections in batches so the backlog keeps up.
+            for (int i = 0; i < 256 && opened < connections; i++, opened++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(address);
+                state[opened] = new int[] { requests, 0 };
+                channel.register(selector, SelectionKey.OP_CONNECT, opened);
+            }
+
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel)key.channel();
+                int[] client = state[(int)key.attachment()];
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                } else {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    if (count < 0) throw new IOException("Server closed a connection.");
+                    client[1] -= count;
+                    if (client[1] > 0) continue;
+                }
+
+                if (client[0] == 0) {
+                    channel.close();
+                    done++;
+                    continue;
+                }
+                client[0]--;
+                client[1] = request.length;
+                channel.write(ByteBuffer.wrap(request));
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d connections, %d requests in %.2f s, %.0f/s%n",
+            connections, (long)connections * requests, seconds,
+            connections * (double)requests / seconds);
+    }
+}
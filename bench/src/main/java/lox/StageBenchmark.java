@@ -0,0 +1,94 @@
+package lox;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Each stage of running a script, over each workload, given what the
+// stages before it produced. Memoizing is off, or fib would measure the
+// memo table.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlox.memo=off")
+public class StageBenchmark {
+    @Param({"fib", "binary_trees", "method_call", "properties", "instantiation",
+            "string_equality", "concatenation", "closures", "inheritance"})
+    public String workload;
+
+    private final Path directory = Paths.get("").toAbsolutePath();
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+    private CompiledProgram program;
+
+    @Setup
+    public void setUp() {
+        source = Workload.source(workload);
+        Diagnostics diagnostics = new Diagnostics();
+        tokens = new FastScanner(source, diagnostics).scanTokens();
+        statements = new Parser(tokens, diagnostics).parse();
+        program = CompiledProgram.compile(source, directory);
+        Workload.check(diagnostics.hadError() || program.hadError(), workload);
+
+        // Once through, to fail here on a script that doesn't run.
+        Workload.check(interpretOnce().hadRuntimeError(), workload);
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(source, new Diagnostics()).scanTokens();
+    }
+
+    // The scanner the command line uses.
+    @Benchmark
+    public List<Token> fastScan() {
+        return new FastScanner(source, new Diagnostics()).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, new Diagnostics()).parse();
+    }
+
+    @Benchmark
+    public Map<Expr, Integer> resolve() {
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        new Resolver(locals, new Diagnostics()).resolve(statements);
+        return locals;
+    }
+
+    // A new interpreter each time, as a script run from the command line
+    // gets, with output thrown away.
+    @Benchmark
+    public Diagnostics interpret() {
+        return interpretOnce();
+    }
+
+    private Diagnostics interpretOnce() {
+        Diagnostics diagnostics = new Diagnostics();
+        Interpreter interpreter = new Interpreter(diagnostics);
+        interpreter.output = new OutputSink(OutputStream.nullOutputStream(), "exit");
+        interpreter.directory = directory;
+        interpreter.interpret(program);
+        return diagnostics;
+    }
+}
@@ -0,0 +1,31 @@
+package lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// The scripts under resources/workloads, each exercising one thing the
+// interpreter does a lot of.
+class Workload {
+    static String source(String name) {
+        return resource("workloads/" + name + ".lox");
+    }
+
+    static String resource(String path) {
+        try (InputStream in = Workload.class.getResourceAsStream("/" + path)) {
+            if (in == null) throw new IllegalArgumentException("No resource " + path + ".");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // Fails the benchmark rather than measuring a script that doesn't
+    // compile or run.
+    static void check(boolean failed, String name) {
+        if (failed) {
+            throw new IllegalStateException("Workload '" + name + "' failed.");
+        }
+    }
+}
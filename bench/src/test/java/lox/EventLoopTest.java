@@ -0,0 +1,137 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class EventLoopTest {
+    private static final String ECHO =
+        "var accepted = 0; var closed = 0; var received = 0;\n" +
+        "fun onAccept(c) { accepted = accepted + 1; }\n" +
+        "fun onRead(c, text) {\n" +
+        "  received = received + text.length();\n" +
+        "  if (text.indexOf(\"quit\") >= 0) { stopEvents(); return; }\n" +
+        "  c.write(text);\n" +
+        "}\n" +
+        "fun onClose(c) { closed = closed + 1; }\n" +
+        "var server = listen(0, onAccept, onRead, onClose);\n" +
+        "fun port() { return server.port(); }\n" +
+        "fun acceptedCount() { return accepted; }\n" +
+        "fun closedCount() { return closed; }\n";
+
+    private static final int CONNECTIONS = 200;
+    private static final int ROUND_TRIPS = 20;
+
+    // A Lox echo server must send back exactly what each of many clients
+    // sends it, multi-byte characters split across reads included.
+    @Test
+    void echoesOverManyConnections() throws Exception {
+        Isolate isolate = new Isolate(new ByteArrayOutputStream());
+        assertTrue(isolate.run(ECHO), () -> isolate.errors().toString());
+        int port = ((Double)isolate.call("port")).intValue();
+
+        ExecutorService threads = Executors.newFixedThreadPool(9);
+        try {
+            Future<Boolean> server = threads.submit(() ->
+                isolate.run("runEvents();"));
+
+            List<Future<?>> clients = new ArrayList<>();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                long seed = i;
+                clients.add(threads.submit(() -> {
+                    roundTrips(port, new Random(seed));
+                    return null;
+                }));
+            }
+            for (Future<?> client : clients) client.get();
+            assertFalse(server.isDone(), () -> isolate.errors().toString());
+
+            try (Socket socket = connect(port)) {
+                socket.getOutputStream().write(
+                    "quit".getBytes(StandardCharsets.UTF_8));
+                assertTrue(server.get(), () -> isolate.errors().toString());
+            }
+            assertEquals((double)CONNECTIONS + 1, isolate.call("acceptedCount"));
+            assertEquals((double)CONNECTIONS, isolate.call("closedCount"));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    // Other fibers run while the loop waits for the network, and one of
+    // them closing the last server ends the loop.
+    @Test
+    void fibersRunWhileWaiting() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Isolate isolate = new Isolate(out);
+            boolean ran = isolate.run(
+                "var server = listen(0, nil, nil, nil);\n" +
+                "fun closer() { sleep(0.1); server.close(); return \"closed\"; }\n" +
+                "var fiber = spawn(closer);\n" +
+                "runEvents();\n" +
+                "print await(fiber);\n");
+            assertTrue(ran, () -> isolate.errors().toString());
+            assertEquals("closed\n", out.toString("UTF-8"));
+        });
+    }
+
+    private static void roundTrips(int port, Random random) throws Exception {
+        try (Socket socket = connect(port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                byte[] sent = message(random);
+                out.write(sent);
+                out.flush();
+                byte[] echoed = new byte[sent.length];
+                int read = 0;
+                while (read < echoed.length) {
+                    int count = in.read(echoed, read, echoed.length - read);
+                    if (count < 0) throw new AssertionError("Closed early.");
+                    read += count;
+                }
+                assertArrayEquals(sent, echoed);
+            }
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        // A server that failed fails the test rather than hanging it.
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    // Up to about 100 KB, so some messages take more than one read, of
+    // letters and characters that take two, three and four bytes.
+    private static byte[] message(Random random) {
+        String[] pieces = { "a", "z", "\u00e9", "\u20ac", "\ud83d\ude00" };
+        int length = random.nextInt(4) == 0 ? 1 + random.nextInt(40000)
+            : 1 + random.nextInt(200);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
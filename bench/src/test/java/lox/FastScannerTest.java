@@ -0,0 +1,66 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// FastScanner against the plain Scanner, which it must match token for
+// token and error for error.
+class FastScannerTest {
+    private static final String[] WORKLOADS = { "fib", "binary_trees",
+        "method_call", "properties", "instantiation", "string_equality",
+        "concatenation", "closures", "inheritance" };
+
+    @Test
+    void workloads() {
+        for (String name : WORKLOADS) {
+            String source = Workload.source(name);
+            assertEquals(describe(source, false), describe(source, true), name);
+        }
+    }
+
+    // Random runs of the pieces the fast paths care about.
+    @Test
+    void randomSources() {
+        String[] pieces = { " ", "  \t ", "\r\n", "\n", "// note\n",
+            "//", "\"text\"", "\"two\nlines\"", "\"", "/", "print",
+            "x1", "12.5", "é", "世", "😀", "@", "(",
+            ";", "               " };
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder source = new StringBuilder();
+            int count = random.nextInt(40);
+            for (int j = 0; j < count; j++) {
+                source.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertEquals(describe(source.toString(), false),
+                describe(source.toString(), true), source.toString());
+        }
+    }
+
+    private static String describe(String source, boolean fast) {
+        Diagnostics diagnostics = new Diagnostics();
+        Scanner scanner = fast ? new FastScanner(source, diagnostics)
+                               : new Scanner(source, diagnostics);
+        StringBuilder out = new StringBuilder();
+        List<Token> tokens = scanner.scanTokens();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            out.append(token.type).append(' ').append(token.lexeme).append(' ')
+               .append(Objects.toString(token.literal)).append(" line ")
+               .append(token.line).append('\n');
+            if (i < tokens.size() - 1) {
+                out.append("  at ").append(scanner.tokenStart(i)).append(':')
+                   .append(scanner.tokenStartLine(i)).append('\n');
+            }
+        }
+        for (Diagnostics.Entry error : diagnostics.errors) {
+            out.append(error).append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// FlatResolver against the Resolver, which it must match depth for depth
+// and error for error.
+class FlatResolverTest {
+    private static final String[] WORKLOADS = { "fib", "binary_trees",
+        "method_call", "properties", "instantiation", "string_equality",
+        "concatenation", "closures", "inheritance" };
+
+    @Test
+    void workloads() {
+        for (String name : WORKLOADS) check(Workload.source(name));
+    }
+
+    @Test
+    void errors() {
+        check("{ var a = a; }");
+        check("{ var a = 1; var a = 2; }");
+        check("return 1;");
+        check("print this; print super.x;");
+        check("class A { f() { return super.f(); } }");
+        check("class A < A {}");
+        check("class A { init() { return 1; } }");
+        check("fun f() { import \"x.lox\"; }");
+        check("fun f(a, a) { { var b; { b = a; this; } } }");
+    }
+
+    // Random nestings of the statements the resolver cares about.
+    @Test
+    void randomPrograms() {
+        String[] opens = { "{ ", "fun f(a, b) { ", "class C < B { m(x) { ",
+            "class D { init() { ", "while (a) { ", "if (b) { " };
+        String[] closes = { "} ", "} ", "} } ", "} } ", "} ", "} else a; " };
+        String[] pieces = { "var a = 1; ", "var b = a; ", "a = b; ",
+            "print a + b; ", "return a; ", "return; ", "this.x = super.y; ",
+            "print c(a, b).d; ", "var a = a; ", "fun g() { return a; } " };
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder source = new StringBuilder();
+            List<Integer> open = new ArrayList<>();
+            int count = random.nextInt(30);
+            for (int j = 0; j < count; j++) {
+                int choice = random.nextInt(3);
+                if (choice == 0 && open.size() < 6) {
+                    int block = random.nextInt(opens.length);
+                    source.append(opens[block]);
+                    open.add(block);
+                } else if (choice == 1 && !open.isEmpty()) {
+                    source.append(closes[open.remove(open.size() - 1)]);
+                } else {
+                    source.append(pieces[random.nextInt(pieces.length)]);
+                }
+            }
+            while (!open.isEmpty()) source.append(closes[open.remove(open.size() - 1)]);
+            check(source.toString());
+        }
+    }
+
+    private static void check(String source) {
+        Diagnostics parsing = new Diagnostics();
+        List<Stmt> statements = new Parser(new FastScanner(source, parsing)
+            .scanTokens(), parsing).parse();
+        assertEquals(List.of(), parsing.errors, source);
+
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        Diagnostics tree = new Diagnostics();
+        new Resolver(locals, tree).resolve(statements);
+
+        FlatAst ast = new FlatAst();
+        List<int[]> resolved = new ArrayList<>();
+        int program = new FlatAst.Encoder(ast) {
+            @Override
+            int encoded(Expr expr, int node) {
+                Integer depth = locals.get(expr);
+                if (depth != null) resolved.add(new int[] { node, depth });
+                return node;
+            }
+        }.encodeStmts(statements);
+        int[] expected = new int[ast.nodeCount];
+        Arrays.fill(expected, -1);
+        for (int[] local : resolved) expected[local[0]] = local[1];
+
+        Diagnostics flat = new Diagnostics();
+        FlatResolver resolver = new FlatResolver(ast, flat);
+        resolver.resolveList(program);
+
+        assertEquals(describe(tree), describe(flat), source);
+        assertArrayEquals(expected, resolver.depths, source);
+    }
+
+    private static List<String> describe(Diagnostics diagnostics) {
+        List<String> errors = new ArrayList<>();
+        for (Diagnostics.Entry error : diagnostics.errors) errors.add(error.toString());
+        return errors;
+    }
+}
@@ -0,0 +1,153 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// IncrementalFrontEnd against scanning, parsing and resolving the whole
+// file again after every edit.
+class IncrementalFrontEndTest {
+    private static final String SOURCE =
+        "var a = 1;\n" +
+        "fun f(x, y) {\n" +
+        "  var z = x + y;\n" +
+        "  return z * a;\n" +
+        "}\n" +
+        "class A < B {\n" +
+        "  m(p) { this.p = p; return super.m(p); }\n" +
+        "}\n" +
+        "if (a) print \"yes\"; else print \"no\";\n" +
+        "{ var b = a; { var c = b; print c; } }\n" +
+        "while (a < 10) a = a + 1;\n" +
+        "print f(1, 2);\n";
+
+    // Pieces that make and break declarations, strings and comments.
+    private static final String[] PIECES = { "\n", " ", "}", "{", ";", "(",
+        ")", "\"", "// note\n", "var q = 2;\n", "fun g(r) { return r; }\n",
+        "else", "if (a) ", "print a;", "class C {}\n", "@", "1.5", "a",
+        "return", "{ var d = d; }", "this", "\"multi\nline\"" };
+
+    // Random edits, and undoing them, each checked against a full run over
+    // the new source.
+    @Test
+    void randomEdits() {
+        Random random = new Random(11);
+        for (int run = 0; run < 300; run++) {
+            IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(SOURCE);
+            for (int i = 0; i < 30; i++) {
+                String source = frontEnd.source();
+                int start = random.nextInt(source.length() + 1);
+                int end = Math.min(source.length(), start +
+                    (random.nextInt(3) == 0 ? random.nextInt(40) : 0));
+                String replacement = random.nextInt(4) == 0 ? ""
+                    : PIECES[random.nextInt(PIECES.length)];
+                // Keep the file small enough for a run to stay quick.
+                if (source.length() > 1500) replacement = "";
+                frontEnd.edit(start, end, replacement);
+                check(frontEnd);
+                // Usually undo an edit that broke the file, so most edits
+                // are to one the full run can resolve.
+                if (!frontEnd.diagnostics().isEmpty() && random.nextInt(4) != 0) {
+                    frontEnd.edit(start, start + replacement.length(),
+                        source.substring(start, end));
+                    check(frontEnd);
+                }
+            }
+        }
+    }
+
+    // An edit inside one function body re-parses it and the declaration
+    // before it, which may have looked ahead into the edit, and keeps the
+    // trees of all the others, even when the edit adds a line.
+    @Test
+    void editReparsesOnlyTouchedDeclarations() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            source.append("fun f").append(i).append("(x) {\n  return x + ")
+                .append(i).append(";\n}\n");
+        }
+        IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(source.toString());
+        List<Stmt> before = frontEnd.statements();
+
+        int at = frontEnd.source().indexOf("return x + 5;");
+        frontEnd.edit(at, at, "print x;\n  ");
+        List<Stmt> after = frontEnd.statements();
+        check(frontEnd);
+
+        assertEquals(10, after.size());
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 5) {
+                assertNotSame(before.get(i), after.get(i), "f" + i);
+            } else {
+                assertSame(before.get(i), after.get(i), "f" + i);
+            }
+        }
+        for (int i = 6; i < 10; i++) assertEquals(1, frontEnd.lineShift(i));
+    }
+
+    private static void check(IncrementalFrontEnd frontEnd) {
+        String source = frontEnd.source();
+        Diagnostics diagnostics = new Diagnostics();
+        List<Stmt> statements = new Parser(new Scanner(source, diagnostics)
+            .scanTokens(), diagnostics).parse();
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        if (diagnostics.errors.isEmpty()) {
+            new Resolver(locals, diagnostics).resolve(statements);
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (Diagnostics.Entry error : diagnostics.errors) expected.add(error.toString());
+        assertEquals(expected, frontEnd.diagnostics(), source);
+
+        // A tree with syntax errors has holes.
+        if (!expected.isEmpty()) return;
+        List<Stmt> incremental = frontEnd.statements();
+        assertEquals(statements.size(), incremental.size(), source);
+        Map<Expr, Integer> incrementalLocals = frontEnd.locals();
+        for (int i = 0; i < statements.size(); i++) {
+            assertEquals(describe(statements.get(i), locals, 0),
+                describe(incremental.get(i), incrementalLocals,
+                    frontEnd.lineShift(i)), source);
+        }
+    }
+
+    // A statement's encoding, with each token's type, lexeme and line,
+    // its old trees' lines shifted to where they are now, and each
+    // resolved node's depth.
+    private static List<String> describe(Stmt statement,
+                                         Map<Expr, Integer> locals, int shift) {
+        FlatAst ast = new FlatAst();
+        List<String> description = new ArrayList<>();
+        int node = new FlatAst.Encoder(ast) {
+            @Override
+            int encoded(Expr expr, int node) {
+                Integer depth = locals.get(expr);
+                if (depth != null) description.add(node + " at " + depth);
+                return node;
+            }
+        }.encode(statement);
+        description.add("statement " + node);
+        description.add(Arrays.toString(Arrays.copyOf(ast.nodes,
+            ast.nodeCount * FlatAst.NODE_SIZE)));
+        description.add(Arrays.toString(Arrays.copyOf(ast.lists,
+            ast.listsSize)));
+        for (int i = 0; i < ast.tokenCount; i++) {
+            Token token = ast.tokens[i];
+            description.add(token.type + " " + token.lexeme + " " +
+                (token.line + shift));
+        }
+        for (int i = 0; i < ast.constantCount; i++) {
+            description.add(String.valueOf(ast.constants[i]));
+        }
+        return description;
+    }
+}
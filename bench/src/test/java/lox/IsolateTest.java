@@ -0,0 +1,54 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class IsolateTest {
+    private static final String[] WORKLOADS = { "binary_trees", "closures",
+        "concatenation", "inheritance" };
+
+    // A program compiled once and run in many isolates at once must print
+    // the same in every one.
+    @Test
+    void sharedProgramOnManyThreads() throws Exception {
+        Path directory = Paths.get("").toAbsolutePath();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            for (String name : WORKLOADS) {
+                CompiledProgram program = CompiledProgram.compile(
+                    Workload.source(name), directory);
+                assertFalse(program.hadError(), name);
+
+                List<Future<byte[]>> outputs = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    outputs.add(threads.submit(() -> {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        Isolate isolate = new Isolate(out);
+                        isolate.setDirectory(directory);
+                        if (!isolate.run(program)) {
+                            throw new AssertionError(isolate.errors());
+                        }
+                        return out.toByteArray();
+                    }));
+                }
+                byte[] first = outputs.get(0).get();
+                for (Future<byte[]> output : outputs) {
+                    assertArrayEquals(first, output.get(), name);
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelTest {
+    // A fiber waits for the lock while parallel workers run out of fuel
+    // slices; they mustn't hand over a lock they don't hold.
+    @Test
+    void workersWithFibersAndFuel() {
+        String script = String.join("\n",
+            "fun side() {",
+            "  var n = 0;",
+            "  for (var i = 0; i < 1000; i = i + 1) n = n + i;",
+            "  return n;",
+            "}",
+            "fun work(x) {",
+            "  var s = 0;",
+            "  for (var i = 0; i < 200; i = i + 1) s = s + x;",
+            "  return s;",
+            "}",
+            "fun add(a, b) {",
+            "  var s = a;",
+            "  for (var i = 0; i < 200; i = i + 1) s = s + 0;",
+            "  return s + b;",
+            "}",
+            "var items = List();",
+            "for (var i = 0; i < 2000; i = i + 1) items.add(i);",
+            "var fiber = spawn(side);",
+            "print parallelMap(work, items).get(1999);",
+            "fiber = spawn(side);",
+            "print parallelReduce(add, 0, items);",
+            "print await(fiber);");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Isolate isolate = new Isolate(out);
+        isolate.setLimits(100_000_000, 0, 100, null);
+        isolate.run(script);
+
+        assertEquals(List.of(), isolate.errors());
+        assertEquals("399800\n1999000\n499500\n",
+            out.toString(StandardCharsets.UTF_8));
+    }
+}
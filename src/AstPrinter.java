@@ -5,6 +5,79 @@ class AstPrinter implements Expr.Visitor<String> {
         return expr.accept(this);
     }
 
+    // Prints an expression straight out of the flat encoding, without
+    // rebuilding the object tree.
+    String print(FlatAst ast, int node) {
+        StringBuilder builder = new StringBuilder();
+        print(ast, node, builder);
+        return builder.toString();
+    }
+
+    private void print(FlatAst ast, int node, StringBuilder builder) {
+        switch (ast.kind(node)) {
+            case FlatAst.BINARY_EXPR:
+            case FlatAst.LOGICAL_EXPR:
+                parenthesize(ast, ast.token(ast.field(node, 1)).lexeme, builder,
+                    ast.field(node, 0), ast.field(node, 2));
+                break;
+            case FlatAst.GROUPING_EXPR:
+                parenthesize(ast, "group", builder, ast.field(node, 0));
+                break;
+            case FlatAst.CALL_EXPR: {
+                int arguments = ast.field(node, 2);
+                builder.append("(call ");
+                print(ast, ast.field(node, 0), builder);
+                for (int i = 0; i < ast.listLength(arguments); i++) {
+                    builder.append(" ");
+                    print(ast, ast.listItem(arguments, i), builder);
+                }
+                builder.append(")");
+                break;
+            }
+            case FlatAst.GET_EXPR:
+            case FlatAst.SET_EXPR:
+                parenthesize(ast, "." + ast.token(ast.field(node, 1)).lexeme,
+                    builder, ast.field(node, 0));
+                break;
+            case FlatAst.SUPER_EXPR:
+                builder.append("super.").append(ast.token(ast.field(node, 1)).lexeme);
+                break;
+            case FlatAst.THIS_EXPR:
+                builder.append("this");
+                break;
+            case FlatAst.LITERAL_EXPR: {
+                Object value = ast.constant(ast.field(node, 0));
+                builder.append(value == null ? "nil" : value.toString());
+                break;
+            }
+            case FlatAst.UNARY_EXPR:
+                parenthesize(ast, ast.token(ast.field(node, 0)).lexeme, builder,
+                    ast.field(node, 1));
+                break;
+            case FlatAst.VARIABLE_EXPR:
+                builder.append(ast.token(ast.field(node, 0)).lexeme);
+                break;
+            case FlatAst.ASSIGN_EXPR:
+                builder.append("(= ").append(ast.token(ast.field(node, 0)).lexeme);
+                builder.append(" ");
+                print(ast, ast.field(node, 1), builder);
+                builder.append(")");
+                break;
+            default:
+                throw new IllegalArgumentException("Not an expression node.");
+        }
+    }
+
+    private void parenthesize(FlatAst ast, String name, StringBuilder builder,
+                              int... nodes) {
+        builder.append("(").append(name);
+        for (int node : nodes) {
+            builder.append(" ");
+            print(ast, node, builder);
+        }
+        builder.append(")");
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme,
@@ -104,5 +177,9 @@ class AstPrinter implements Expr.Visitor<String> {
                 new Expr.Literal(45.67)));
     
         System.out.println(new AstPrinter().print(expression));
+
+        FlatAst ast = new FlatAst();
+        int node = new FlatAst.Encoder(ast).encode(expression);
+        System.out.println(new AstPrinter().print(ast, node));
       }
 }
\ No newline at end of file
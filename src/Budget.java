@@ -0,0 +1,79 @@
+// Limits on what one run may use, for scripts that can't be trusted to
+// stop or to stay small. Fuel is spent a step at a time, a step being a
+// call or a pass around a loop. Memory is what instances, functions,
+// strings and collection entries are estimated to take as they're made,
+// a rope's characters once it's flattened, never given back. Running out
+// of either ends the run with a runtime error.
+//
+// Every slice steps a run also comes to a yield point, where hook is
+// called, from the thread running the script, if there is one: to let
+// other tenants go first, say, or to end the run by throwing. A fiber
+// lets the other fibers run there.
+//
+// Interpreters take fuel and memory from their budget a slice at a time
+// and count down their share in a field, so a run without limits, and
+// the steps between slices, cost a decrement and a test.
+class Budget {
+    static final long INSTANCE = 48;
+    static final long FUNCTION = 48;
+    static final long ENTRY = 32;
+    static final long ROPE = 32;
+    static final long UNLIMITED = Long.MAX_VALUE;
+    static final long SLICE = 10_000;
+
+    // Memory is handed out in pieces this size, or what's asked for.
+    private static final long PIECE = 1 << 16;
+
+    private final long fuel;
+    private final long memory;
+    final long slice;
+    final Runnable hook;
+    private long fuelLeft;
+    private long memoryLeft;
+
+    Budget(long fuel, long memory, long slice, Runnable hook) {
+        this.fuel = fuel;
+        this.memory = memory;
+        this.slice = slice;
+        this.hook = hook;
+    }
+
+    static long string(long length) {
+        return 24 + 2 * length;
+    }
+
+    static long doubles(long length) {
+        return 16 + 8 * length;
+    }
+
+    // Called as a run starts; returns its first slice of fuel.
+    synchronized long reset() {
+        fuelLeft = fuel;
+        memoryLeft = memory;
+        return takeFuel();
+    }
+
+    // The next slice of fuel, or 0 once the run's is spent.
+    synchronized long takeFuel() {
+        long taken = Math.min(slice, fuelLeft);
+        fuelLeft -= taken;
+        return taken;
+    }
+
+    // Takes bytes straight from what's left, for memory used outside an
+    // interpreter's share, as when a rope is flattened; false if that
+    // would go over the limit.
+    synchronized boolean charge(long bytes) {
+        if (bytes > memoryLeft) return false;
+        memoryLeft -= bytes;
+        return true;
+    }
+
+    // At least needed bytes, or -1 if that would go over the limit.
+    synchronized long takeMemory(long needed) {
+        if (needed > memoryLeft) return -1;
+        long taken = Math.min(Math.max(needed, PIECE), memoryLeft);
+        memoryLeft -= taken;
+        return taken;
+    }
+}
@@ -0,0 +1,64 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A script scanned, parsed and resolved once, to be run any number of
+// times, by any number of interpreters at once. Nothing here changes
+// after compile returns: the syntax tree isn't written to once parsed,
+// and the resolution lives here rather than in an interpreter, which
+// reads it in place while running the program and its functions.
+//
+//   CompiledProgram program = CompiledProgram.compile(source, directory);
+//   if (!program.hadError()) isolate.run(program);
+public class CompiledProgram {
+    final List<Stmt> statements;
+    final Map<Expr, Integer> locals;
+    // Compile errors, the imported modules' included; a program with any
+    // can't run.
+    final List<Diagnostics.Entry> errors;
+
+    private CompiledProgram(List<Stmt> statements, Map<Expr, Integer> locals,
+                            List<Diagnostics.Entry> errors) {
+        this.statements = statements;
+        this.locals = locals;
+        this.errors = errors;
+    }
+
+    // Imports are compiled too, looked up in directory. They're run by
+    // each interpreter that runs the program, from that interpreter's
+    // directory, so it should be the same one.
+    public static CompiledProgram compile(String source, Path directory) {
+        Diagnostics diagnostics = new Diagnostics();
+        Scanner scanner = new FastScanner(source, diagnostics);
+        return compile(scanner.scanTokens(), directory, diagnostics);
+    }
+
+    // For tokens already scanned, with any errors in diagnostics.
+    static CompiledProgram compile(List<Token> tokens, Path directory,
+                                   Diagnostics diagnostics) {
+        List<Stmt> statements = new Parser(tokens, diagnostics).parse();
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        if (!diagnostics.hadError()) {
+            ModuleLoader.prefetch(directory, statements);
+            new Resolver(locals, diagnostics).resolve(statements);
+            ModuleLoader.await(directory, statements, diagnostics);
+        }
+        return new CompiledProgram(Collections.unmodifiableList(statements),
+            Collections.unmodifiableMap(locals),
+            Collections.unmodifiableList(new ArrayList<>(diagnostics.errors)));
+    }
+
+    public boolean hadError() {
+        return !errors.isEmpty();
+    }
+
+    // The compile errors, as the command line prints them.
+    public List<String> errors() {
+        List<String> messages = new ArrayList<>();
+        for (Diagnostics.Entry error : errors) messages.add(error.toString());
+        return messages;
+    }
+}
@@ -0,0 +1,88 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Receives compile errors from the scanner, parser and resolver, and the
+// runtime errors that end a run. Errors are collected by default; the
+// command line prints them as they come.
+class Diagnostics {
+    static class Entry {
+        final int line;
+        final String where;
+        final String message;
+        // The module the error is in, or null for the program itself.
+        final Path file;
+
+        Entry(int line, String where, String message) {
+            this(line, where, message, null);
+        }
+
+        Entry(int line, String where, String message, Path file) {
+            this.line = line;
+            this.where = where;
+            this.message = message;
+            this.file = file;
+        }
+
+        Entry shift(int lines) {
+            if (lines == 0) return this;
+            return new Entry(line + lines, where, message, file);
+        }
+
+        Entry in(Path file) {
+            return new Entry(line, where, message, file);
+        }
+
+        @Override
+        public String toString() {
+            String error = "[line " + line + "] Error" + where + ": " + message;
+            return file == null ? error : file + ": " + error;
+        }
+    }
+
+    final List<Entry> errors = new ArrayList<>();
+    final List<RuntimeError> runtimeErrors = new ArrayList<>();
+
+    void error(int line, String message) {
+        report(new Entry(line, "", message));
+    }
+
+    void error(Token token, String message) {
+        report(entry(token, message));
+    }
+
+    static Entry entry(Token token, String message) {
+        if (token.type == TokenType.Eof) {
+            return new Entry(token.line, " at end", message);
+        }
+        return new Entry(token.line, " at '" + token.lexeme + "'", message);
+    }
+
+    void report(Entry error) {
+        errors.add(error);
+    }
+
+    boolean hadError() {
+        return !errors.isEmpty();
+    }
+
+    void runtimeError(RuntimeError error) {
+        runtimeErrors.add(error);
+    }
+
+    boolean hadRuntimeError() {
+        return !runtimeErrors.isEmpty();
+    }
+
+    void clear() {
+        errors.clear();
+        runtimeErrors.clear();
+    }
+
+    // Errors raised outside any script, by an embedder's call, have no
+    // line.
+    static String describe(RuntimeError error) {
+        if (error.token == null) return error.getMessage();
+        return error.getMessage() + "\n[line " + error.token.line + "]";
+    }
+}
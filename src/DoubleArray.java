@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+// A fixed-length array of numbers backed by a double[], created with
+// DoubleArray(length). Slices are views that share their parent's storage.
+class DoubleArray implements NativeObject {
+    private static final DoubleKernels kernels = DoubleKernels.load();
+
+    private static final NativeMethods<DoubleArray> methods =
+        new NativeMethods<>();
+
+    static {
+        methods.define("length", 0, (interpreter, array, arguments) ->
+            (double)array.length);
+        methods.define("get", 1, (interpreter, array, arguments) ->
+            array.data[array.index(arguments.get(0))]);
+        methods.define("set", 2, (interpreter, array, arguments) -> {
+            double value = NativeFunction.number(arguments.get(1));
+            array.data[array.index(arguments.get(0))] = value;
+            return value;
+        });
+        methods.define("fill", 1, (interpreter, array, arguments) -> {
+            kernels.fill(array.data, array.offset, array.length,
+                NativeFunction.number(arguments.get(0)));
+            return null;
+        });
+        methods.define("slice", 2, (interpreter, array, arguments) -> {
+            int from = array.bound(arguments.get(0));
+            int to = array.bound(arguments.get(1));
+            if (from > to) throw NativeFunction.error("Slice ends before it starts.");
+            return new DoubleArray(array.data, array.offset + from, to - from);
+        });
+        methods.define("sort", 0, (interpreter, array, arguments) -> {
+            Arrays.sort(array.data, array.offset, array.offset + array.length);
+            return null;
+        });
+        methods.define("add", 1, (interpreter, array, arguments) -> {
+            DoubleArray other = array.same(arguments.get(0));
+            kernels.add(array.data, array.offset, other.data, other.offset,
+                array.length);
+            return null;
+        });
+        methods.define("scale", 1, (interpreter, array, arguments) -> {
+            kernels.scale(array.data, array.offset, array.length,
+                NativeFunction.number(arguments.get(0)));
+            return null;
+        });
+        methods.define("dot", 1, (interpreter, array, arguments) -> {
+            DoubleArray other = array.same(arguments.get(0));
+            return kernels.dot(array.data, array.offset, other.data,
+                other.offset, array.length);
+        });
+        methods.define("sum", 0, (interpreter, array, arguments) ->
+            kernels.sum(array.data, array.offset, array.length));
+        methods.define("min", 0, (interpreter, array, arguments) ->
+            array.length == 0 ? null :
+                kernels.min(array.data, array.offset, array.length));
+        methods.define("max", 0, (interpreter, array, arguments) ->
+            array.length == 0 ? null :
+                kernels.max(array.data, array.offset, array.length));
+    }
+
+    final double[] data;
+    final int offset;
+    final int length;
+
+    DoubleArray(int length) {
+        this(new double[length], 0, length);
+    }
+
+    private DoubleArray(double[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    static NativeFunction constructor() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            double length = NativeFunction.number(arguments.get(0));
+            if (length < 0 || length != Math.floor(length) ||
+                length > Integer.MAX_VALUE - 8) {
+                throw NativeFunction.error("Invalid array length.");
+            }
+            interpreter.allocate(null, Budget.doubles((long)length));
+            return new DoubleArray((int)length);
+        });
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    // The storage index of a Lox index into this array.
+    private int index(Object value) {
+        double index = NativeFunction.number(value);
+        if (index < 0 || index >= length || index != Math.floor(index)) {
+            throw NativeFunction.error("Index out of bounds.");
+        }
+        return offset + (int)index;
+    }
+
+    // A slice bound, which may be the length itself.
+    private int bound(Object value) {
+        double bound = NativeFunction.number(value);
+        if (bound < 0 || bound > length || bound != Math.floor(bound)) {
+            throw NativeFunction.error("Slice bound out of range.");
+        }
+        return (int)bound;
+    }
+
+    private DoubleArray same(Object value) {
+        if (!(value instanceof DoubleArray)) {
+            throw NativeFunction.error("Argument must be a DoubleArray.");
+        }
+        DoubleArray other = (DoubleArray)value;
+        if (other.length != length) {
+            throw NativeFunction.error("Arrays must have the same length.");
+        }
+        return other;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) text.append(", ");
+            text.append(Interpreter.stringify(data[offset + i]));
+        }
+        return text.append("]").toString();
+    }
+}
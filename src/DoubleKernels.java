@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+// The bulk loops behind DoubleArray. VectorKernels overrides them with the
+// Vector API when it has been built (make buildvector) and the JVM runs
+// with --add-modules jdk.incubator.vector.
+class DoubleKernels {
+    static DoubleKernels load() {
+        try {
+            return (DoubleKernels)Class.forName("VectorKernels")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError error) {
+            return new DoubleKernels();
+        }
+    }
+
+    void fill(double[] a, int offset, int length, double value) {
+        Arrays.fill(a, offset, offset + length, value);
+    }
+
+    // a += b, elementwise.
+    void add(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) a[aOffset + i] += b[bOffset + i];
+    }
+
+    void scale(double[] a, int offset, int length, double factor) {
+        for (int i = offset; i < offset + length; i++) a[i] *= factor;
+    }
+
+    // Sums use four accumulators so the additions don't wait on each other.
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) s0 += a[aOffset + i] * b[bOffset + i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    double sum(double[] a, int offset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 4 <= end; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < end; i++) s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    double min(double[] a, int offset, int length) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = offset; i < offset + length; i++) min = Math.min(min, a[i]);
+        return min;
+    }
+
+    double max(double[] a, int offset, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + length; i++) max = Math.max(max, a[i]);
+        return max;
+    }
+}
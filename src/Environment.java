@@ -1,19 +1,33 @@
-import java.util.HashMap;
-import java.util.Map;
-
 class Environment {
-    private final Map<String, Object> values = new HashMap<>();
+    final SymbolMap<Object> values = new SymbolMap<>();
     final Environment parent;
+    // Where names the resolver left as globals are looked up; the root of
+    // the chain, or a module's own top level.
+    final Environment globals;
+    // Supplies bindings that haven't been materialised yet.
+    HeapImage image;
+
+    Environment() {  parent = null;  globals = this;  }   
+    Environment(Environment parent) {  this(parent, false);  }
 
-    Environment() {  parent = null;  }   
-    Environment(Environment parent) {  this.parent = parent;  }
+    Environment(Environment parent, boolean isModule) {
+        this.parent = parent;
+        this.globals = isModule ? this : parent.globals;
+    }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        values.put(Symbols.intern(name), value);
+    }
+
+    void define(Token name, Object value) {
+        values.put(name.symbol, value);
     }
 
     Object get(Token name) {
-        if (!values.containsKey(name.lexeme)) {
+        if (!values.containsKey(name.symbol)) {
+            if (image != null && image.load(this, name.symbol)) {
+                return values.get(name.symbol);
+            }
             if (parent != null) {
                 return parent.get(name);
             } else {
@@ -22,12 +36,13 @@ class Environment {
             }
         }
 
-        return values.get(name.lexeme);
+        return values.get(name.symbol);
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        if (values.containsKey(name.symbol) ||
+            (image != null && image.load(this, name.symbol))) {
+            values.put(name.symbol, value);
         } else {
             if (parent != null) {
                 parent.assign(name, value);
@@ -38,8 +53,8 @@ class Environment {
         }    
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    Object getAt(int distance, int symbol) {
+        return ancestor(distance).values.get(symbol);
     }
 
     Environment ancestor(int distance) {
@@ -52,6 +67,6 @@ class Environment {
     }
 
     void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        ancestor(distance).values.put(name.symbol, value);
     }
-}
\ No newline at end of file
+}
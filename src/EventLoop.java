@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Serves TCP connections on localhost from one thread, the one running
+// the script, through a single Selector:
+//
+//   listen(port, onAccept, onRead, onClose) starts accepting on port, or
+//     any free port for 0, and returns a Server with port() and close().
+//     onAccept(connection) and onClose(connection) are told about each
+//     connection, and onRead(connection, text) gets what arrives, as UTF-8
+//     text in whatever pieces the network delivers. Any of them may be nil.
+//   runEvents() calls those until every server and connection is closed,
+//     or stopEvents() is called.
+//
+// Connections have write(text), which queues text and never blocks, and
+// close(), which closes once the queue is written. All reads go through
+// one buffer, and queued writes through buffers taken from a shared pool.
+//
+// Other fibers run while the loop waits in select(), and may write,
+// close, listen or stop meanwhile, which wakes it to pick that up.
+class EventLoop {
+    private static final int READ_SIZE = 1 << 16;
+    private static final int WRITE_SIZE = 1 << 14;
+    // Free write buffers kept beyond this many are left to the GC.
+    private static final int POOL_LIMIT = 1024;
+    private static final int BACKLOG = 4096;
+
+    private final Interpreter interpreter;
+    private final Selector selector;
+    private final ByteBuffer input = ByteBuffer.allocateDirect(READ_SIZE);
+    // Room for the input and a partial character left from the last read.
+    private final CharBuffer text = CharBuffer.allocate(READ_SIZE + 4);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    // Servers and connections not yet closed.
+    private int open = 0;
+    private int nextId = 0;
+    private boolean stopped;
+    // In select(), with the fiber lock released.
+    private boolean selecting;
+
+    EventLoop(Interpreter interpreter) throws IOException {
+        this.interpreter = interpreter;
+        this.selector = Selector.open();
+    }
+
+    static NativeFunction listen() {
+        return new NativeFunction(4, (interpreter, arguments) -> {
+            double port = NativeFunction.number(arguments.get(0));
+            if (port < 0 || port > 65535 || port != Math.floor(port)) {
+                throw NativeFunction.error("Invalid port.");
+            }
+            LoxCallable onAccept = callback(arguments.get(1), 1);
+            LoxCallable onRead = callback(arguments.get(2), 2);
+            LoxCallable onClose = callback(arguments.get(3), 1);
+            try {
+                return interpreter.events().serve((int)port, onAccept, onRead,
+                    onClose);
+            } catch (IOException error) {
+                throw NativeFunction.error("Can't listen on port " +
+                    (int)port + ": " + error.getMessage());
+            }
+        });
+    }
+
+    static NativeFunction run() {
+        return new NativeFunction(0, (interpreter, arguments) -> {
+            try {
+                interpreter.events().loop();
+            } catch (IOException error) {
+                throw NativeFunction.error(error.getMessage());
+            }
+            return null;
+        });
+    }
+
+    static NativeFunction stop() {
+        return new NativeFunction(0, (interpreter, arguments) -> {
+            EventLoop events = interpreter.events();
+            events.stopped = true;
+            events.changed();
+            return null;
+        });
+    }
+
+    private static LoxCallable callback(Object value, int arity) {
+        if (value == null) return null;
+        return LoxMap.callback(value, arity);
+    }
+
+    private LoxServer serve(int port, LoxCallable onAccept, LoxCallable onRead,
+                            LoxCallable onClose) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port), BACKLOG);
+        } catch (IOException error) {
+            channel.close();
+            throw error;
+        }
+        LoxServer server = new LoxServer(this, channel, onAccept, onRead, onClose);
+        server.key = channel.register(selector, SelectionKey.OP_ACCEPT, server);
+        open++;
+        changed();
+        return server;
+    }
+
+    // Another fiber changed what select() should wait for.
+    private void changed() {
+        if (selecting) selector.wakeup();
+    }
+
+    private void select() throws IOException {
+        Fibers fibers = interpreter.fibersIfStarted();
+        selecting = true;
+        if (fibers != null) fibers.release();
+        try {
+            selector.select();
+        } finally {
+            if (fibers != null) fibers.reacquire();
+            selecting = false;
+        }
+    }
+
+    private void loop() throws IOException {
+        stopped = false;
+        while (!stopped && open > 0) {
+            select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+
+                if (key.isAcceptable()) {
+                    accept((LoxServer)key.attachment());
+                    continue;
+                }
+                LoxConnection connection = (LoxConnection)key.attachment();
+                if (key.isReadable()) read(connection);
+                if (key.isValid() && key.isWritable()) flush(connection);
+            }
+        }
+        // Deregister the channels closed since the last select.
+        selector.selectNow();
+    }
+
+    private void accept(LoxServer server) throws IOException {
+        SocketChannel channel;
+        while (!server.closed && (channel = server.channel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            LoxConnection connection = new LoxConnection(server, channel,
+                nextId++);
+            connection.key = channel.register(selector, SelectionKey.OP_READ,
+                connection);
+            open++;
+            if (server.onAccept != null) {
+                server.onAccept.call(interpreter, Arrays.asList(connection));
+            }
+        }
+    }
+
+    private void read(LoxConnection connection) {
+        input.clear();
+        int count;
+        try {
+            count = connection.channel.read(input);
+        } catch (IOException error) {
+            count = -1;
+        }
+        if (count < 0) {
+            close(connection);
+            return;
+        }
+        if (count == 0) return;
+
+        input.flip();
+        String received = decode(connection);
+        if (connection.server.onRead != null && !received.isEmpty()) {
+            connection.server.onRead.call(interpreter,
+                Arrays.asList(connection, received));
+        }
+    }
+
+    // Decodes the input, keeping the bytes of a character split across
+    // reads for the next one.
+    private String decode(LoxConnection connection) {
+        ByteBuffer bytes = input;
+        if (connection.partial != null) {
+            bytes = ByteBuffer.allocate(connection.partial.length + input.remaining());
+            bytes.put(connection.partial).put(input).flip();
+            connection.partial = null;
+        }
+
+        text.clear();
+        decoder.reset();
+        decoder.decode(bytes, text, false);
+        if (bytes.hasRemaining()) {
+            connection.partial = new byte[bytes.remaining()];
+            bytes.get(connection.partial);
+        }
+        return text.flip().toString();
+    }
+
+    // Queues text on connection and writes what it can right away.
+    void write(LoxConnection connection, CharSequence value) {
+        CharBuffer chars = CharBuffer.wrap(value);
+        encoder.reset();
+        ByteBuffer buffer = connection.writes.peekLast();
+        if (buffer == null || !buffer.hasRemaining()) {
+            buffer = take();
+            connection.writes.addLast(buffer);
+        }
+        // Overflow can leave a few bytes too few for the next character,
+        // so it always goes on in a new buffer.
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            buffer = take();
+            connection.writes.addLast(buffer);
+        }
+        while (encoder.flush(connection.writes.peekLast()).isOverflow()) {
+            connection.writes.addLast(take());
+        }
+        flush(connection);
+    }
+
+    // Writes queued buffers until the socket won't take more, and only
+    // then asks the selector to say when it will.
+    void flush(LoxConnection connection) {
+        ByteBuffer buffer;
+        while ((buffer = connection.writes.peekFirst()) != null) {
+            buffer.flip();
+            try {
+                connection.channel.write(buffer);
+            } catch (IOException error) {
+                close(connection);
+                return;
+            }
+            if (buffer.hasRemaining()) {
+                buffer.compact();
+                connection.key.interestOps(connection.closing
+                    ? SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                changed();
+                return;
+            }
+            give(connection.writes.pollFirst());
+        }
+
+        if (connection.closing) {
+            close(connection);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    void close(LoxConnection connection) {
+        if (connection.closed) return;
+        connection.closed = true;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException error) {
+            // It's gone either way.
+        }
+        for (ByteBuffer buffer : connection.writes) give(buffer);
+        connection.writes.clear();
+        open--;
+        changed();
+        if (connection.server.onClose != null) {
+            connection.server.onClose.call(interpreter, Arrays.asList(connection));
+        }
+    }
+
+    void close(LoxServer server) {
+        if (server.closed) return;
+        server.closed = true;
+        server.key.cancel();
+        try {
+            server.channel.close();
+        } catch (IOException error) {
+            // It's gone either way.
+        }
+        open--;
+        changed();
+    }
+
+    // Write buffers are in fill mode while queued.
+    private ByteBuffer take() {
+        ByteBuffer buffer = pool.pollFirst();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(WRITE_SIZE);
+    }
+
+    private void give(ByteBuffer buffer) {
+        buffer.clear();
+        if (pool.size() < POOL_LIMIT) pool.addFirst(buffer);
+    }
+}
@@ -0,0 +1,150 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// A Scanner that skips whitespace and comment bodies and finds the end of
+// string literals eight characters at a time, using SWAR over longs: each
+// long holds eight characters, and bit tricks find the bytes that match.
+// Everything else goes through the plain Scanner, which stays the
+// reference; FastScannerTest, under bench, checks that both produce the
+// same tokens and errors.
+class FastScanner extends Scanner {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOWS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long SPACES = ONES * ' ';
+    private static final long TABS = ONES * '\t';
+    private static final long RETURNS = ONES * '\r';
+    private static final long NEWLINES = ONES * '\n';
+    private static final long QUOTES = ONES * '"';
+
+    // One byte per char. Anything outside Latin-1 becomes '?', which is
+    // never one of the characters searched for.
+    private final byte[] bytes;
+
+    FastScanner(String source) {
+        this(source, Lox.diagnostics);
+    }
+
+    FastScanner(String source, Diagnostics diagnostics) {
+        super(source, diagnostics);
+        bytes = latin1(source);
+    }
+
+    private static byte[] latin1(String source) {
+        byte[] bytes = source.getBytes(StandardCharsets.ISO_8859_1);
+        if (bytes.length == source.length()) return bytes;
+
+        // The encoder turned a surrogate pair into one '?'; keep one byte
+        // per char so offsets line up.
+        bytes = new byte[source.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = source.charAt(i);
+            bytes[i] = c <= 0xff ? (byte)c : (byte)'?';
+        }
+        return bytes;
+    }
+
+    @Override
+    void scanToken() {
+        char c = source.charAt(current);
+        if (c == ' ' || c == '\r' || c == '\t' || c == '\n') {
+            skipWhitespace();
+        } else if (c == '/' && current + 1 < bytes.length &&
+                   bytes[current + 1] == '/') {
+            // A comment goes until the end of the line.
+            current = find(current + 2, NEWLINES, '\n');
+        } else if (c == '"') {
+            current++;
+            string();
+        } else {
+            super.scanToken();
+        }
+    }
+
+    @Override
+    void string() {
+        int end = find(current, QUOTES, '"');
+        line += countNewlines(current, end);
+        current = end;
+
+        if (end == bytes.length) {
+            diagnostics.error(line, "Unterminated string.");
+            return;
+        }
+
+        // The closing ".
+        current++;
+        addToken(TokenType.String, source.substring(start + 1, end));
+    }
+
+    private void skipWhitespace() {
+        int i = current;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            long word = word(i);
+            long newlines = matches(word, NEWLINES);
+            long other = ~(matches(word, SPACES) | matches(word, TABS) |
+                matches(word, RETURNS) | newlines) & HIGHS;
+            if (other != 0) {
+                int length = Long.numberOfTrailingZeros(other) >>> 3;
+                line += Long.bitCount(newlines & below(length));
+                current = i + length;
+                return;
+            }
+            line += Long.bitCount(newlines);
+        }
+
+        for (; i < bytes.length; i++) {
+            byte c = bytes[i];
+            if (c == '\n') {
+                line++;
+            } else if (c != ' ' && c != '\r' && c != '\t') {
+                break;
+            }
+        }
+        current = i;
+    }
+
+    // The first index from `from` holding c, or the end of the source.
+    private int find(int from, long pattern, char c) {
+        int i = from;
+        for (; i + Long.BYTES <= bytes.length; i += Long.BYTES) {
+            long found = matches(word(i), pattern);
+            if (found != 0) return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        while (i < bytes.length && bytes[i] != c) i++;
+        return i;
+    }
+
+    private int countNewlines(int from, int to) {
+        int count = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            count += Long.bitCount(matches(word(i), NEWLINES));
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == '\n') count++;
+        }
+        return count;
+    }
+
+    private long word(int index) {
+        return (long)LONGS.get(bytes, index);
+    }
+
+    // The high bit of every byte of word equal to the byte repeated in
+    // pattern, and no other bits.
+    private static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+
+    // The low `length` bytes.
+    private static long below(int length) {
+        return (1L << (length * 8)) - 1;
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.ArrayDeque;
+
+// A function running in its own fiber, returned by spawn(). See Fibers.
+class Fiber implements NativeObject {
+    private static final NativeMethods<Fiber> methods = new NativeMethods<>();
+
+    static {
+        methods.define("done", 0, (interpreter, fiber, arguments) -> fiber.done);
+    }
+
+    final Fibers fibers;
+    // Fibers waiting in await() for this one.
+    final ArrayDeque<Fibers.Waiter> joiners = new ArrayDeque<>();
+    boolean done = false;
+    Object result;
+    RuntimeError error;
+
+    Fiber(Fibers fibers) {
+        this.fibers = fibers;
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "Fiber";
+    }
+}
@@ -0,0 +1,260 @@
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Lox code running alongside the rest of the script:
+//
+//   spawn(fn) calls fn, a function without parameters, in a new fiber
+//     and returns the Fiber, whose done() says whether it has returned.
+//   await(fiber) waits for it to return, and returns what it returned.
+//   Channel(capacity) holds up to capacity values: send(value) waits for
+//     room, receive() waits for a value, or returns nil once the channel
+//     is closed and empty, and close() wakes everyone waiting on it.
+//   select(channels) waits for any of a List of channels to have a value,
+//     or be closed, and receives from the first that does; it returns a
+//     List of its index and the value.
+//   sleep(seconds) waits that long.
+//
+// Fibers take turns: one lock, taken by the first spawn, lets one of them
+// run Lox code at a time, until it waits in one of the natives above.
+// So values, mutable ones too, can be passed around freely, while each
+// fiber has its own interpreter and so its own scopes. A fiber gets a
+// virtual thread on Java 21 and later, and a platform thread before.
+// Fibers still running when the script ends are dropped. A fiber that
+// would wait while every other one is waiting, with none sleeping, fails
+// with a deadlock error instead.
+class Fibers {
+    private static final Method ofVirtual;
+    private static final Method unstarted;
+
+    static {
+        Method builder = null;
+        Method start = null;
+        try {
+            builder = Thread.class.getMethod("ofVirtual");
+            start = Class.forName("java.lang.Thread$Builder")
+                .getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException error) {
+            builder = null;
+        }
+        ofVirtual = builder;
+        unstarted = start;
+    }
+
+    // What a waiting fiber parks on.
+    static class Waiter {
+        final Condition condition;
+        boolean woken = false;
+        // The channel that woke it, if any.
+        LoxChannel wokenBy;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    final ReentrantLock lock = new ReentrantLock();
+    private final ThreadLocal<Waiter> waiters =
+        ThreadLocal.withInitial(() -> new Waiter(lock.newCondition()));
+    // Fibers running Lox code or waiting for the lock to, and ones in
+    // sleep().
+    private int running = 0;
+    private int sleeping = 0;
+
+    void enter() {
+        lock.lock();
+        running++;
+    }
+
+    void leave() {
+        running--;
+        lock.unlock();
+    }
+
+    private Fiber spawn(Interpreter interpreter, LoxCallable function) {
+        Fiber fiber = new Fiber(this);
+        Interpreter forked = new Interpreter(interpreter);
+        Thread thread = thread(() -> {
+            lock.lock();
+            try {
+                fiber.result = function.call(forked, new ArrayList<>());
+            } catch (RuntimeError error) {
+                fiber.error = error;
+                forked.diagnostics.runtimeError(error);
+            } catch (StackOverflowError overflow) {
+                fiber.error = new RuntimeError(null, "Stack overflow.");
+                forked.diagnostics.runtimeError(fiber.error);
+            } finally {
+                fiber.done = true;
+                while (!fiber.joiners.isEmpty()) wake(fiber.joiners.pollFirst());
+                leave();
+            }
+        });
+        // It counts as running from now, so awaiting it isn't a deadlock.
+        running++;
+        try {
+            thread.start();
+        } catch (OutOfMemoryError error) {
+            running--;
+            throw NativeFunction.error("Can't start a fiber: " + error.getMessage());
+        }
+        return fiber;
+    }
+
+    private static Thread thread(Runnable body) {
+        if (ofVirtual != null) {
+            try {
+                return (Thread)unstarted.invoke(ofVirtual.invoke(null), body);
+            } catch (ReflectiveOperationException error) {
+                // A preview feature that isn't enabled.
+            }
+        }
+        Thread thread = new Thread(body, "lox-fiber");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // A yield point: a fiber waiting for the lock gets it first.
+    void pass() {
+        if (!lock.hasQueuedThreads()) return;
+        lock.unlock();
+        Thread.yield();
+        lock.lock();
+    }
+
+    // Around a wait no other fiber ends, like one for the network: the
+    // others run meanwhile, and it counts as sleeping, so they can wait
+    // for its results without that being a deadlock.
+    void release() {
+        running--;
+        sleeping++;
+        lock.unlock();
+    }
+
+    void reacquire() {
+        lock.lock();
+        sleeping--;
+        running++;
+    }
+
+    // Waits on queue until woken, letting other fibers run meanwhile.
+    void park(ArrayDeque<Waiter> queue) {
+        Waiter waiter = block();
+        queue.addLast(waiter);
+        suspend(waiter);
+    }
+
+    // Counts the calling fiber out of the running ones, before it parks.
+    private Waiter block() {
+        running--;
+        if (running == 0 && sleeping == 0) {
+            running++;
+            throw NativeFunction.error("Deadlock: every fiber is waiting.");
+        }
+        return waiters.get();
+    }
+
+    private void suspend(Waiter waiter) {
+        while (!waiter.woken) waiter.condition.awaitUninterruptibly();
+        waiter.woken = false;
+    }
+
+    // Called with a waiter taken off a queue it was parked on.
+    void wake(Waiter waiter) {
+        waiter.woken = true;
+        running++;
+        waiter.condition.signal();
+    }
+
+    private Object await(Fiber fiber) {
+        while (!fiber.done) park(fiber.joiners);
+        if (fiber.error != null) throw NativeFunction.error("Awaited fiber failed.");
+        return fiber.result;
+    }
+
+    private LoxList select(List<LoxChannel> channels) {
+        LoxChannel wokenBy = null;
+        while (true) {
+            for (int i = 0; i < channels.size(); i++) {
+                LoxChannel channel = channels.get(i);
+                if (!channel.isReady()) continue;
+                Object value = channel.take();
+                // Another waiter gets the wake-up we didn't use.
+                if (wokenBy != null && wokenBy != channel) wokenBy.passOn();
+                return new LoxList(new ArrayList<>(Arrays.asList((double)i, value)));
+            }
+
+            Waiter waiter = block();
+            waiter.wokenBy = null;
+            for (LoxChannel channel : channels) channel.receivers.addLast(waiter);
+            suspend(waiter);
+            for (LoxChannel channel : channels) channel.receivers.remove(waiter);
+            wokenBy = waiter.wokenBy;
+        }
+    }
+
+    private void sleep(long nanos) {
+        Condition condition = waiters.get().condition;
+        running--;
+        sleeping++;
+        try {
+            long deadline = System.nanoTime() + nanos;
+            long left;
+            while ((left = deadline - System.nanoTime()) > 0) {
+                condition.awaitNanos(left);
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sleeping--;
+            running++;
+        }
+    }
+
+    static NativeFunction spawnNative() {
+        return new NativeFunction(1, (interpreter, arguments) ->
+            interpreter.fibers().spawn(interpreter,
+                LoxMap.callback(arguments.get(0), 0)));
+    }
+
+    static NativeFunction awaitNative() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            if (!(arguments.get(0) instanceof Fiber)) {
+                throw NativeFunction.error("Argument must be a fiber.");
+            }
+            Fiber fiber = (Fiber)arguments.get(0);
+            return fiber.fibers.await(fiber);
+        });
+    }
+
+    static NativeFunction selectNative() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            Object list = arguments.get(0);
+            if (!(list instanceof LoxList) || ((LoxList)list).items.isEmpty()) {
+                throw NativeFunction.error("Argument must be a List of channels.");
+            }
+            List<LoxChannel> channels = new ArrayList<>();
+            for (Object item : ((LoxList)list).items) {
+                if (!(item instanceof LoxChannel)) {
+                    throw NativeFunction.error("Argument must be a List of channels.");
+                }
+                channels.add((LoxChannel)item);
+            }
+            return interpreter.fibers().select(channels);
+        });
+    }
+
+    static NativeFunction sleepNative() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            double seconds = NativeFunction.number(arguments.get(0));
+            if (!(seconds >= 0)) throw NativeFunction.error("Invalid duration.");
+            long nanos = (long)Math.min(seconds * 1e9, Long.MAX_VALUE);
+            interpreter.fibers().sleep(nanos);
+            return null;
+        });
+    }
+}
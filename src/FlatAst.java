@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+class FlatAst {
+  static final int NODE_SIZE = 4;
+  static final int SCHEMA = -1016385298;
+
+  // Node kinds.
+  static final int ASSIGN_EXPR = 0;
+  static final int BINARY_EXPR = 1;
+  static final int CALL_EXPR = 2;
+  static final int GET_EXPR = 3;
+  static final int GROUPING_EXPR = 4;
+  static final int LITERAL_EXPR = 5;
+  static final int LOGICAL_EXPR = 6;
+  static final int SET_EXPR = 7;
+  static final int SUPER_EXPR = 8;
+  static final int THIS_EXPR = 9;
+  static final int UNARY_EXPR = 10;
+  static final int VARIABLE_EXPR = 11;
+  static final int BLOCK_STMT = 12;
+  static final int CLASS_STMT = 13;
+  static final int EXPRESSION_STMT = 14;
+  static final int FUNCTION_STMT = 15;
+  static final int IF_STMT = 16;
+  static final int IMPORT_STMT = 17;
+  static final int PRINT_STMT = 18;
+  static final int RETURN_STMT = 19;
+  static final int VAR_STMT = 20;
+  static final int WHILE_STMT = 21;
+
+  int[] nodes = new int[NODE_SIZE * 64];
+  int nodeCount = 0;
+  int[] lists = new int[64];
+  int listsSize = 0;
+  Token[] tokens = new Token[64];
+  int tokenCount = 0;
+  Object[] constants = new Object[16];
+  int constantCount = 0;
+
+  int kind(int node) {
+    return nodes[node * NODE_SIZE];
+  }
+
+  int field(int node, int index) {
+    return nodes[node * NODE_SIZE + 1 + index];
+  }
+
+  int listLength(int list) {
+    return lists[list];
+  }
+
+  int listItem(int list, int index) {
+    return lists[list + 1 + index];
+  }
+
+  Token token(int index) {
+    return index < 0 ? null : tokens[index];
+  }
+
+  Object constant(int index) {
+    return constants[index];
+  }
+
+  int addNode(int kind, int... fields) {
+    if ((nodeCount + 1) * NODE_SIZE > nodes.length) {
+      nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    }
+    int base = nodeCount * NODE_SIZE;
+    nodes[base] = kind;
+    for (int i = 0; i < NODE_SIZE - 1; i++) {
+      nodes[base + 1 + i] = i < fields.length ? fields[i] : -1;
+    }
+    return nodeCount++;
+  }
+
+  int addList(int[] items, int count) {
+    while (listsSize + count + 1 > lists.length) {
+      lists = Arrays.copyOf(lists, lists.length * 2);
+    }
+    int list = listsSize;
+    lists[listsSize++] = count;
+    System.arraycopy(items, 0, lists, listsSize, count);
+    listsSize += count;
+    return list;
+  }
+
+  int addToken(Token token) {
+    if (tokenCount == tokens.length) {
+      tokens = Arrays.copyOf(tokens, tokens.length * 2);
+    }
+    tokens[tokenCount] = token;
+    return tokenCount++;
+  }
+
+  int addConstant(Object value) {
+    if (constantCount == constants.length) {
+      constants = Arrays.copyOf(constants, constants.length * 2);
+    }
+    constants[constantCount] = value;
+    return constantCount++;
+  }
+
+  static class Encoder implements Expr.Visitor<Integer>,
+                                  Stmt.Visitor<Integer> {
+    final FlatAst ast;
+    private final Map<Token, Integer> tokenIndex =
+        new IdentityHashMap<>();
+    private final Map<Object, Integer> constantIndex =
+        new HashMap<>();
+
+    Encoder(FlatAst ast) {
+      this.ast = ast;
+    }
+
+    // Called for every encoded node, e.g. to carry resolution results
+    // over to node indices.
+    int encoded(Expr expr, int node) {
+      return node;
+    }
+
+    int encoded(Stmt stmt, int node) {
+      return node;
+    }
+
+    int encode(Expr expr) {
+      return expr == null ? -1 : expr.accept(this);
+    }
+
+    int encode(Stmt stmt) {
+      return stmt == null ? -1 : stmt.accept(this);
+    }
+
+    int encodeStmts(List<? extends Stmt> stmts) {
+      int[] items = new int[stmts.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = encode(stmts.get(i));
+      }
+      return ast.addList(items, items.length);
+    }
+
+    int encodeExprs(List<Expr> exprs) {
+      int[] items = new int[exprs.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = encode(exprs.get(i));
+      }
+      return ast.addList(items, items.length);
+    }
+
+    int encodeTokens(List<Token> tokens) {
+      int[] items = new int[tokens.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = token(tokens.get(i));
+      }
+      return ast.addList(items, items.length);
+    }
+
+    int token(Token token) {
+      if (token == null) return -1;
+      Integer index = tokenIndex.get(token);
+      if (index == null) {
+        index = ast.addToken(token);
+        tokenIndex.put(token, index);
+      }
+      return index;
+    }
+
+    int constant(Object value) {
+      Integer index = constantIndex.get(value);
+      if (index == null) {
+        index = ast.addConstant(value);
+        constantIndex.put(value, index);
+      }
+      return index;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      return encoded(expr, ast.addNode(ASSIGN_EXPR, token(expr.name), encode(expr.value)));
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      return encoded(expr, ast.addNode(BINARY_EXPR, encode(expr.left), token(expr.operator), encode(expr.right)));
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      return encoded(expr, ast.addNode(CALL_EXPR, encode(expr.callee), token(expr.paren), encodeExprs(expr.arguments)));
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      return encoded(expr, ast.addNode(GET_EXPR, encode(expr.object), token(expr.name)));
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      return encoded(expr, ast.addNode(GROUPING_EXPR, encode(expr.expression)));
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      return encoded(expr, ast.addNode(LITERAL_EXPR, constant(expr.value)));
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      return encoded(expr, ast.addNode(LOGICAL_EXPR, encode(expr.left), token(expr.operator), encode(expr.right)));
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      return encoded(expr, ast.addNode(SET_EXPR, encode(expr.object), token(expr.name), encode(expr.value)));
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+      return encoded(expr, ast.addNode(SUPER_EXPR, token(expr.keyword), token(expr.method)));
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      return encoded(expr, ast.addNode(THIS_EXPR, token(expr.keyword)));
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      return encoded(expr, ast.addNode(UNARY_EXPR, token(expr.operator), encode(expr.right)));
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      return encoded(expr, ast.addNode(VARIABLE_EXPR, token(expr.name)));
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      return encoded(stmt, ast.addNode(BLOCK_STMT, encodeStmts(stmt.statements)));
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      return encoded(stmt, ast.addNode(CLASS_STMT, token(stmt.name), encode(stmt.superclass), encodeStmts(stmt.methods)));
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      return encoded(stmt, ast.addNode(EXPRESSION_STMT, encode(stmt.expression)));
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+      return encoded(stmt, ast.addNode(FUNCTION_STMT, token(stmt.name), encodeTokens(stmt.params), encodeStmts(stmt.body)));
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      return encoded(stmt, ast.addNode(IF_STMT, encode(stmt.condition), encode(stmt.thenBranch), encode(stmt.elseBranch)));
+    }
+
+    @Override
+    public Integer visitImportStmt(Stmt.Import stmt) {
+      return encoded(stmt, ast.addNode(IMPORT_STMT, token(stmt.keyword), token(stmt.path)));
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      return encoded(stmt, ast.addNode(PRINT_STMT, encode(stmt.expression)));
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      return encoded(stmt, ast.addNode(RETURN_STMT, token(stmt.keyword), encode(stmt.value)));
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      return encoded(stmt, ast.addNode(VAR_STMT, token(stmt.name), encode(stmt.initializer)));
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      return encoded(stmt, ast.addNode(WHILE_STMT, token(stmt.keyword), encode(stmt.condition), encode(stmt.body)));
+    }
+  }
+
+  static class Decoder {
+    final FlatAst ast;
+
+    Decoder(FlatAst ast) {
+      this.ast = ast;
+    }
+
+    // Called for every decoded expression.
+    Expr decoded(int node, Expr expr) {
+      return expr;
+    }
+
+    Expr expr(int node) {
+      if (node < 0) return null;
+      switch (ast.kind(node)) {
+        case ASSIGN_EXPR:
+          return decoded(node, new Expr.Assign(ast.token(ast.field(node, 0)), expr(ast.field(node, 1))));
+        case BINARY_EXPR:
+          return decoded(node, new Expr.Binary(expr(ast.field(node, 0)), ast.token(ast.field(node, 1)), expr(ast.field(node, 2))));
+        case CALL_EXPR:
+          return decoded(node, new Expr.Call(expr(ast.field(node, 0)), ast.token(ast.field(node, 1)), exprs(ast.field(node, 2))));
+        case GET_EXPR:
+          return decoded(node, new Expr.Get(expr(ast.field(node, 0)), ast.token(ast.field(node, 1))));
+        case GROUPING_EXPR:
+          return decoded(node, new Expr.Grouping(expr(ast.field(node, 0))));
+        case LITERAL_EXPR:
+          return decoded(node, new Expr.Literal(ast.constant(ast.field(node, 0))));
+        case LOGICAL_EXPR:
+          return decoded(node, new Expr.Logical(expr(ast.field(node, 0)), ast.token(ast.field(node, 1)), expr(ast.field(node, 2))));
+        case SET_EXPR:
+          return decoded(node, new Expr.Set(expr(ast.field(node, 0)), ast.token(ast.field(node, 1)), expr(ast.field(node, 2))));
+        case SUPER_EXPR:
+          return decoded(node, new Expr.Super(ast.token(ast.field(node, 0)), ast.token(ast.field(node, 1))));
+        case THIS_EXPR:
+          return decoded(node, new Expr.This(ast.token(ast.field(node, 0))));
+        case UNARY_EXPR:
+          return decoded(node, new Expr.Unary(ast.token(ast.field(node, 0)), expr(ast.field(node, 1))));
+        case VARIABLE_EXPR:
+          return decoded(node, new Expr.Variable(ast.token(ast.field(node, 0))));
+      }
+      throw new IllegalStateException(
+          "Not a Expr node: " + node);
+    }
+
+    Stmt stmt(int node) {
+      if (node < 0) return null;
+      switch (ast.kind(node)) {
+        case BLOCK_STMT:
+          return new Stmt.Block(stmts(ast.field(node, 0)));
+        case CLASS_STMT:
+          return new Stmt.Class(ast.token(ast.field(node, 0)), (Expr.Variable)expr(ast.field(node, 1)), stmts(ast.field(node, 2)));
+        case EXPRESSION_STMT:
+          return new Stmt.Expression(expr(ast.field(node, 0)));
+        case FUNCTION_STMT:
+          return new Stmt.Function(ast.token(ast.field(node, 0)), tokens(ast.field(node, 1)), stmts(ast.field(node, 2)));
+        case IF_STMT:
+          return new Stmt.If(expr(ast.field(node, 0)), stmt(ast.field(node, 1)), stmt(ast.field(node, 2)));
+        case IMPORT_STMT:
+          return new Stmt.Import(ast.token(ast.field(node, 0)), ast.token(ast.field(node, 1)));
+        case PRINT_STMT:
+          return new Stmt.Print(expr(ast.field(node, 0)));
+        case RETURN_STMT:
+          return new Stmt.Return(ast.token(ast.field(node, 0)), expr(ast.field(node, 1)));
+        case VAR_STMT:
+          return new Stmt.Var(ast.token(ast.field(node, 0)), expr(ast.field(node, 1)));
+        case WHILE_STMT:
+          return new Stmt.While(ast.token(ast.field(node, 0)), expr(ast.field(node, 1)), stmt(ast.field(node, 2)));
+      }
+      throw new IllegalStateException(
+          "Not a Stmt node: " + node);
+    }
+
+    List<Stmt> program(int list) {
+      return stmts(list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Stmt> List<T> stmts(int list) {
+      List<T> stmts = new ArrayList<>(ast.listLength(list));
+      for (int i = 0; i < ast.listLength(list); i++) {
+        stmts.add((T)stmt(ast.listItem(list, i)));
+      }
+      return stmts;
+    }
+
+    private List<Expr> exprs(int list) {
+      List<Expr> exprs = new ArrayList<>(ast.listLength(list));
+      for (int i = 0; i < ast.listLength(list); i++) {
+        exprs.add(expr(ast.listItem(list, i)));
+      }
+      return exprs;
+    }
+
+    private List<Token> tokens(int list) {
+      List<Token> tokens = new ArrayList<>(ast.listLength(list));
+      for (int i = 0; i < ast.listLength(list); i++) {
+        tokens.add(ast.token(ast.listItem(list, i)));
+      }
+      return tokens;
+    }
+  }
+}
@@ -0,0 +1,249 @@
+import java.util.Arrays;
+import java.util.Stack;
+
+// The Resolver over a FlatAst arena instead of the object tree: the same
+// scopes and the same errors, in the same order. Each local's depth goes
+// into an int per node, the form ProgramCache and HeapImage store, rather
+// than into a map keyed by Expr.
+class FlatResolver {
+    private enum FunctionType {
+        None,
+        Function,
+        Initializer,
+        Method
+    }
+
+    private enum ClassType {
+        None,
+        Class,
+        Subclass
+    }
+
+    private final FlatAst ast;
+    private final Diagnostics diagnostics;
+    // Per node, how many scopes out the variable it names was declared,
+    // or -1 for a global, or a node that names none.
+    final int[] depths;
+    private final Stack<SymbolMap<Boolean>> scopes = new Stack<>();
+    private FunctionType currentFunction = FunctionType.None;
+    private ClassType currentClass = ClassType.None;
+
+    FlatResolver(FlatAst ast, Diagnostics diagnostics) {
+        this.ast = ast;
+        this.diagnostics = diagnostics;
+        depths = new int[ast.nodeCount];
+        Arrays.fill(depths, -1);
+    }
+
+    // Resolves a list of statements, such as a whole program.
+    void resolveList(int list) {
+        for (int i = 0; i < ast.listLength(list); i++) {
+            resolve(ast.listItem(list, i));
+        }
+    }
+
+    private void resolve(int node) {
+        if (node < 0) return;
+        switch (ast.kind(node)) {
+            case FlatAst.ASSIGN_EXPR:
+                resolve(ast.field(node, 1));
+                resolveLocal(node, token(node, 0));
+                break;
+            case FlatAst.BINARY_EXPR:
+            case FlatAst.LOGICAL_EXPR:
+                resolve(ast.field(node, 0));
+                resolve(ast.field(node, 2));
+                break;
+            case FlatAst.CALL_EXPR:
+                resolve(ast.field(node, 0));
+                resolveList(ast.field(node, 2));
+                break;
+            case FlatAst.GET_EXPR:
+            case FlatAst.GROUPING_EXPR:
+                resolve(ast.field(node, 0));
+                break;
+            case FlatAst.SET_EXPR:
+                resolve(ast.field(node, 2));
+                resolve(ast.field(node, 0));
+                break;
+            case FlatAst.SUPER_EXPR: {
+                Token keyword = token(node, 0);
+                if (currentClass == ClassType.None) {
+                    diagnostics.error(keyword,
+                        "Can't use 'super' outside of a class.");
+                } else if (currentClass != ClassType.Subclass) {
+                    diagnostics.error(keyword,
+                        "Can't use 'super' in a class with no superclass.");
+                }
+                resolveLocal(node, keyword);
+                break;
+            }
+            case FlatAst.THIS_EXPR:
+                if (currentClass == ClassType.None) {
+                    diagnostics.error(token(node, 0),
+                        "Can't use 'this' outside of a class.");
+                } else {
+                    resolveLocal(node, token(node, 0));
+                }
+                break;
+            case FlatAst.UNARY_EXPR:
+                resolve(ast.field(node, 1));
+                break;
+            case FlatAst.VARIABLE_EXPR: {
+                Token name = token(node, 0);
+                if (!scopes.isEmpty() &&
+                    scopes.peek().get(name.symbol) == Boolean.FALSE) {
+                    diagnostics.error(name,
+                        "Can't read local variable in its own initializer.");
+                }
+                resolveLocal(node, name);
+                break;
+            }
+            case FlatAst.BLOCK_STMT:
+                beginScope();
+                resolveList(ast.field(node, 0));
+                endScope();
+                break;
+            case FlatAst.CLASS_STMT:
+                resolveClass(node);
+                break;
+            case FlatAst.EXPRESSION_STMT:
+            case FlatAst.PRINT_STMT:
+                resolve(ast.field(node, 0));
+                break;
+            case FlatAst.FUNCTION_STMT:
+                declare(token(node, 0));
+                define(token(node, 0));
+                resolveFunction(node, FunctionType.Function);
+                break;
+            case FlatAst.IF_STMT:
+                resolve(ast.field(node, 0));
+                resolve(ast.field(node, 1));
+                resolve(ast.field(node, 2));
+                break;
+            case FlatAst.IMPORT_STMT:
+                if (!scopes.isEmpty()) {
+                    diagnostics.error(token(node, 0),
+                        "Can only import at top level.");
+                }
+                break;
+            case FlatAst.RETURN_STMT: {
+                Token keyword = token(node, 0);
+                if (currentFunction == FunctionType.None) {
+                    diagnostics.error(keyword, "Can't return from top-level code.");
+                }
+                if (ast.field(node, 1) >= 0) {
+                    if (currentFunction == FunctionType.Initializer) {
+                        diagnostics.error(keyword,
+                            "Can't return a value from an initializer.");
+                    }
+                    resolve(ast.field(node, 1));
+                }
+                break;
+            }
+            case FlatAst.VAR_STMT:
+                declare(token(node, 0));
+                resolve(ast.field(node, 1));
+                define(token(node, 0));
+                break;
+            case FlatAst.WHILE_STMT:
+                resolve(ast.field(node, 1));
+                resolve(ast.field(node, 2));
+                break;
+        }
+    }
+
+    private void resolveClass(int node) {
+        ClassType enclosingClass = currentClass;
+        currentClass = ClassType.Class;
+
+        Token name = token(node, 0);
+        declare(name);
+        define(name);
+
+        int superclass = ast.field(node, 1);
+        if (superclass >= 0 && name.symbol == token(superclass, 0).symbol) {
+            diagnostics.error(token(superclass, 0),
+                "A class can't inherit from itself.");
+        }
+
+        if (superclass >= 0) {
+            currentClass = ClassType.Subclass;
+            resolve(superclass);
+
+            beginScope();
+            scopes.peek().put(Symbols.SUPER, true);
+        }
+        beginScope();
+        scopes.peek().put(Symbols.THIS, true);
+
+        int methods = ast.field(node, 2);
+        for (int i = 0; i < ast.listLength(methods); i++) {
+            int method = ast.listItem(methods, i);
+            FunctionType declaration = FunctionType.Method;
+            if (token(method, 0).symbol == Symbols.INIT) {
+                declaration = FunctionType.Initializer;
+            }
+            resolveFunction(method, declaration);
+        }
+
+        endScope();
+        if (superclass >= 0) endScope();
+
+        currentClass = enclosingClass;
+    }
+
+    private void resolveFunction(int node, FunctionType type) {
+        FunctionType enclosingFunction = currentFunction;
+        currentFunction = type;
+
+        beginScope();
+        int params = ast.field(node, 1);
+        for (int i = 0; i < ast.listLength(params); i++) {
+            Token param = ast.token(ast.listItem(params, i));
+            declare(param);
+            define(param);
+        }
+        resolveList(ast.field(node, 2));
+        endScope();
+        currentFunction = enclosingFunction;
+    }
+
+    private Token token(int node, int field) {
+        return ast.token(ast.field(node, field));
+    }
+
+    private void beginScope() {
+        scopes.push(new SymbolMap<Boolean>());
+    }
+
+    private void endScope() {
+        scopes.pop();
+    }
+
+    private void declare(Token name) {
+        if (scopes.isEmpty()) return;
+
+        SymbolMap<Boolean> scope = scopes.peek();
+        if (scope.containsKey(name.symbol)) {
+            diagnostics.error(name,
+                "Already a variable with this name in this scope.");
+        }
+
+        scope.put(name.symbol, false);
+    }
+
+    private void define(Token name) {
+        if (scopes.isEmpty()) return;
+        scopes.peek().put(name.symbol, true);
+    }
+
+    private void resolveLocal(int node, Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.symbol)) {
+                depths[node] = scopes.size() - 1 - i;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+
+// Open-addressing storage behind LoxMap and LoxSet, in parallel arrays
+// instead of entry objects. Number keys live only as their bits in a
+// long[], so looking one up compares longs and never keeps a Double; other
+// keys keep their hash there and are compared with equals, like ==.
+// LoxStrings find String keys by content, and are stored as Strings.
+class HashTable {
+    private static final byte EMPTY = 0;
+    private static final byte DELETED = 1;
+    private static final byte NUMBER = 2;
+    private static final byte OBJECT = 3;
+
+    private byte[] tags;
+    private long[] bits;
+    private Object[] keys;
+    // Null for sets.
+    private Object[] values;
+    private int size = 0;
+    // Slots that aren't EMPTY, including deleted ones.
+    private int used = 0;
+
+    HashTable(boolean hasValues) {
+        allocate(8, hasValues);
+    }
+
+    private void allocate(int capacity, boolean hasValues) {
+        tags = new byte[capacity];
+        bits = new long[capacity];
+        keys = new Object[capacity];
+        values = hasValues ? new Object[capacity] : null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // The slot holding key, or -1.
+    int find(Object key) {
+        if (key instanceof Double) return findNumber(numberBits((double)key));
+        return findObject(key, hash(key));
+    }
+
+    private int findNumber(long number) {
+        int mask = tags.length - 1;
+        for (int slot = mix(number) & mask; ; slot = (slot + 1) & mask) {
+            byte tag = tags[slot];
+            if (tag == EMPTY) return -1;
+            if (tag == NUMBER && bits[slot] == number) return slot;
+        }
+    }
+
+    private int findObject(Object key, int hash) {
+        int mask = tags.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte tag = tags[slot];
+            if (tag == EMPTY) return -1;
+            if (tag == OBJECT && bits[slot] == hash && equal(keys[slot], key)) {
+                return slot;
+            }
+        }
+    }
+
+    // The slot holding key, adding it first if needed.
+    int insert(Object key) {
+        int slot = find(key);
+        if (slot >= 0) return slot;
+
+        key = LoxString.normalize(key);
+        if ((used + 1) * 4 > tags.length * 3) rehash();
+        if (key instanceof Double) {
+            long number = numberBits((double)key);
+            slot = freeSlot(mix(number));
+            tags[slot] = NUMBER;
+            bits[slot] = number;
+        } else {
+            int hash = hash(key);
+            slot = freeSlot(hash);
+            tags[slot] = OBJECT;
+            bits[slot] = hash;
+            keys[slot] = key;
+        }
+        size++;
+        return slot;
+    }
+
+    private int freeSlot(int hash) {
+        int mask = tags.length - 1;
+        int slot = hash & mask;
+        while (tags[slot] > DELETED) slot = (slot + 1) & mask;
+        if (tags[slot] == EMPTY) used++;
+        return slot;
+    }
+
+    boolean remove(Object key) {
+        int slot = find(key);
+        if (slot < 0) return false;
+        tags[slot] = DELETED;
+        keys[slot] = null;
+        if (values != null) values[slot] = null;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(tags, EMPTY);
+        Arrays.fill(keys, null);
+        if (values != null) Arrays.fill(values, null);
+        size = 0;
+        used = 0;
+    }
+
+    // The first occupied slot after the given one, or -1. Start from -1.
+    // Adding keys can move everything, so positions don't survive it.
+    int next(int slot) {
+        for (int i = slot + 1; i < tags.length; i++) {
+            if (tags[i] > DELETED) return i;
+        }
+        return -1;
+    }
+
+    boolean isOccupied(int slot) {
+        return slot >= 0 && slot < tags.length && tags[slot] > DELETED;
+    }
+
+    Object key(int slot) {
+        if (tags[slot] == NUMBER) return Double.longBitsToDouble(bits[slot]);
+        return keys[slot];
+    }
+
+    Object value(int slot) {
+        return values[slot];
+    }
+
+    void setValue(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    // Also drops deleted slots, so it may not grow at all.
+    private void rehash() {
+        byte[] oldTags = tags;
+        long[] oldBits = bits;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        int capacity = 8;
+        while (capacity * 3 < (size + 1) * 8) capacity *= 2;
+        allocate(capacity, oldValues != null);
+        used = 0;
+        for (int i = 0; i < oldTags.length; i++) {
+            byte tag = oldTags[i];
+            if (tag <= DELETED) continue;
+            int slot = freeSlot(tag == NUMBER ? mix(oldBits[i]) : (int)oldBits[i]);
+            tags[slot] = tag;
+            bits[slot] = oldBits[i];
+            keys[slot] = oldKeys[i];
+            if (values != null) values[slot] = oldValues[i];
+        }
+    }
+
+    // The bits == compares: Double.equals treats all NaNs as one value and
+    // tells 0 and -0 apart.
+    private static long numberBits(double number) {
+        return Double.doubleToLongBits(number);
+    }
+
+    private static int mix(long number) {
+        long hash = number * 0x9e3779b97f4a7c15L;
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    private static int hash(Object key) {
+        if (key == null) return 0;
+        int hash = key.hashCode() * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a == null) return b == null;
+        if (b instanceof LoxString) return b.equals(a);
+        return a.equals(b);
+    }
+}
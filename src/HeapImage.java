@@ -0,0 +1,555 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A snapshot of the global environment after running a prelude, together
+// with the AST its functions refer to, including imported modules. Loading
+// maps the file and leaves every global in place until the first time it
+// is looked up; only then are its value, the objects it reaches and their
+// declarations decoded.
+//
+// So looking a global up can change the globals and the image. Fibers
+// take turns, and never while a lookup is decoding, but parallel workers
+// don't, so Parallel has every global decoded before it starts them.
+class HeapImage {
+    private static final int MAGIC = 0x4c4f5849; // "LOXI"
+    private static final int FORMAT = 3;
+
+    // Value tags, extending the ones ProgramCache uses for constants.
+    private static final byte OBJECT = 5;
+    private static final byte NATIVE = 6;
+
+    // Object records.
+    private static final byte ENVIRONMENT = 0;
+    private static final byte FUNCTION = 1;
+    private static final byte CLASS = 2;
+    private static final byte INSTANCE = 3;
+    private static final byte LIST = 4;
+    private static final byte MAP = 5;
+    private static final byte SET = 6;
+
+    // Object id of the global environment itself.
+    private static final int GLOBALS = 0;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ByteBuffer image;
+    private final Interpreter interpreter;
+    private final Image ast;
+    private final int[] depths;
+    private final Section tokens;
+    private final Section constants;
+    private final Section objects;
+    private final Section values;
+    private final Map<Integer, Integer> globals = new HashMap<>();
+
+    private final Object[] loaded;
+    private final Map<Integer, Stmt.Function> declarations = new HashMap<>();
+    private final Deque<Integer> unfilled = new ArrayDeque<>();
+    private final FlatAst.Decoder decoder;
+
+    private HeapImage(ByteBuffer image, Interpreter interpreter) {
+        this.image = image;
+        this.interpreter = interpreter;
+
+        if (image.getInt() != MAGIC || image.getInt() != FORMAT ||
+            image.getInt() != FlatAst.SCHEMA ||
+            !ProgramCache.readBuild(image)) {
+            throw new IllegalArgumentException(
+                "Image was written by a different interpreter.");
+        }
+
+        ast = new Image();
+        ast.nodes = ProgramCache.readInts(image);
+        ast.nodeCount = ast.nodes.length / FlatAst.NODE_SIZE;
+        ast.lists = ProgramCache.readInts(image);
+        ast.listsSize = ast.lists.length;
+        depths = ProgramCache.readInts(image);
+
+        tokens = new Section(image);
+        ast.tokens = new Token[tokens.offsets.length];
+        ast.tokenCount = ast.tokens.length;
+        constants = new Section(image);
+        ast.constants = new Object[constants.offsets.length];
+        ast.constantCount = ast.constants.length;
+        objects = new Section(image);
+        loaded = new Object[objects.offsets.length];
+        loaded[GLOBALS] = interpreter.globals;
+        values = new Section(image);
+
+        int count = image.getInt();
+        for (int i = 0; i < count; i++) {
+            globals.put(Symbols.intern(ProgramCache.readString(image)), i);
+        }
+
+        decoder = new FlatAst.Decoder(ast) {
+            @Override
+            Expr decoded(int node, Expr expr) {
+                if (depths[node] >= 0) interpreter.resolve(expr, depths[node]);
+                return expr;
+            }
+        };
+    }
+
+    static void load(Path path, Interpreter interpreter) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            ByteBuffer image = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            interpreter.globals.image = new HeapImage(image, interpreter);
+        }
+    }
+
+    // Materialises the global with the given name, if the image has one.
+    boolean load(Environment environment, int name) {
+        Integer index = globals.remove(name);
+        if (index == null) return false;
+
+        Object value = readRef(values.at(index));
+        while (!unfilled.isEmpty()) fill(unfilled.pop());
+        environment.values.put(name, value);
+        return true;
+    }
+
+    // Materialises every global left, after which the environment no
+    // longer needs the image.
+    static void loadAll(Environment environment) {
+        HeapImage image = environment.image;
+        if (image == null) return;
+        for (int name : new ArrayList<>(image.globals.keySet())) {
+            image.load(environment, name);
+        }
+        environment.image = null;
+    }
+
+    private Object readRef(ByteBuffer in) {
+        byte tag = in.get(in.position());
+        if (tag == OBJECT) {
+            in.get();
+            return object(in.getInt());
+        }
+        if (tag == NATIVE) {
+            in.get();
+            return interpreter.globals.values.get(
+                Symbols.intern(ProgramCache.readString(in)));
+        }
+        return ProgramCache.readValue(in);
+    }
+
+    // Creates the object without its contents, which may refer back to it.
+    // The contents are filled in once the current lookup has its shells.
+    private Object object(int id) {
+        if (loaded[id] != null) return loaded[id];
+
+        ByteBuffer in = objects.at(id);
+        Object object;
+        switch (in.get()) {
+            case ENVIRONMENT: {
+                int parent = in.getInt();
+                boolean isModule = in.get() != 0;
+                object = parent < 0 ? new Environment() :
+                    new Environment((Environment)object(parent), isModule);
+                unfilled.push(id);
+                break;
+            }
+            case FUNCTION: {
+                Stmt.Function declaration = declaration(in.getInt());
+                Environment closure = (Environment)object(in.getInt());
+                object = new LoxFunction(declaration, closure, in.get() != 0,
+                    interpreter.locals);
+                break;
+            }
+            case CLASS: {
+                String name = ProgramCache.readString(in);
+                int superclass = in.getInt();
+                object = new LoxClass(name, superclass < 0 ? null :
+                    (LoxClass)object(superclass), new SymbolMap<>());
+                unfilled.push(id);
+                break;
+            }
+            case INSTANCE:
+                object = new LoxInstance((LoxClass)object(in.getInt()));
+                unfilled.push(id);
+                break;
+            case LIST:
+                object = new LoxList();
+                unfilled.push(id);
+                break;
+            case MAP:
+                object = new LoxMap();
+                unfilled.push(id);
+                break;
+            case SET:
+                object = new LoxSet();
+                unfilled.push(id);
+                break;
+            default:
+                throw new IllegalStateException("Corrupt image object " + id + ".");
+        }
+
+        loaded[id] = object;
+        return object;
+    }
+
+    private void fill(int id) {
+        ByteBuffer in = objects.at(id);
+        switch (in.get()) {
+            case ENVIRONMENT: {
+                in.getInt();
+                in.get();
+                Environment environment = (Environment)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    int name = Symbols.intern(ProgramCache.readString(in));
+                    environment.values.put(name, readRef(in));
+                }
+                break;
+            }
+            case CLASS: {
+                ProgramCache.readString(in);
+                in.getInt();
+                LoxClass klass = (LoxClass)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    int name = Symbols.intern(ProgramCache.readString(in));
+                    klass.methods.put(name, (LoxFunction)object(in.getInt()));
+                }
+                break;
+            }
+            case INSTANCE: {
+                in.getInt();
+                LoxInstance instance = (LoxInstance)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    int name = Symbols.intern(ProgramCache.readString(in));
+                    instance.fields.put(name, readRef(in));
+                }
+                break;
+            }
+            case LIST: {
+                LoxList list = (LoxList)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) list.items.add(readRef(in));
+                break;
+            }
+            case MAP: {
+                LoxMap map = (LoxMap)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) map.put(readRef(in), readRef(in));
+                break;
+            }
+            case SET: {
+                LoxSet set = (LoxSet)loaded[id];
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) set.table.insert(readRef(in));
+                break;
+            }
+        }
+    }
+
+    private Stmt.Function declaration(int node) {
+        Stmt.Function declaration = declarations.get(node);
+        if (declaration == null) {
+            declaration = (Stmt.Function)decoder.stmt(node);
+            declarations.put(node, declaration);
+        }
+        return declaration;
+    }
+
+    // The prelude's arena, with tokens and constants decoded on first use.
+    private class Image extends FlatAst {
+        @Override
+        Token token(int index) {
+            if (index < 0) return null;
+            if (tokens[index] == null) {
+                ByteBuffer in = HeapImage.this.tokens.at(index);
+                TokenType type = TOKEN_TYPES[in.getInt()];
+                int line = in.getInt();
+                String lexeme = ProgramCache.readString(in);
+                tokens[index] = new Token(type, lexeme,
+                    ProgramCache.readValue(in), line);
+            }
+            return tokens[index];
+        }
+
+        @Override
+        Object constant(int index) {
+            // nil stays null and is simply decoded again.
+            if (constants[index] == null) {
+                constants[index] = ProgramCache.readValue(
+                    HeapImage.this.constants.at(index));
+            }
+            return constants[index];
+        }
+    }
+
+    // A run of variable-length records with an offset table.
+    private static class Section {
+        private final ByteBuffer image;
+        final int[] offsets;
+        private final int base;
+
+        Section(ByteBuffer image) {
+            this.image = image;
+            offsets = ProgramCache.readInts(image);
+            int length = image.getInt();
+            base = image.position();
+            image.position(base + length);
+        }
+
+        ByteBuffer at(int index) {
+            ByteBuffer in = image.duplicate();
+            in.position(base + offsets[index]);
+            return in;
+        }
+    }
+
+    static void write(Path path, List<Stmt> program,
+                      Interpreter interpreter) throws IOException {
+        FlatAst ast = new FlatAst();
+        Map<Stmt, Integer> declarations = new IdentityHashMap<>();
+        List<int[]> locals = new ArrayList<>();
+        FlatAst.Encoder encoder = new FlatAst.Encoder(ast) {
+            @Override
+            int encoded(Expr expr, int node) {
+                Integer depth = interpreter.resolvedDepth(expr);
+                if (depth != null) locals.add(new int[] { node, depth });
+                return node;
+            }
+
+            @Override
+            int encoded(Stmt stmt, int node) {
+                if (stmt instanceof Stmt.Function) declarations.put(stmt, node);
+                return node;
+            }
+        };
+        encoder.encodeStmts(program);
+        for (LoxModule module : interpreter.modules.keySet()) {
+            encoder.encodeStmts(module.statements);
+        }
+
+        int[] depths = new int[ast.nodeCount];
+        Arrays.fill(depths, -1);
+        for (int[] local : locals) depths[local[0]] = local[1];
+
+        Writer writer = new Writer(interpreter, declarations);
+        List<String> names = new ArrayList<>();
+        SectionWriter values = new SectionWriter();
+        SymbolMap<Object> globals = interpreter.globals.values;
+        for (int i = 0; i < globals.size(); i++) {
+            String name = Symbols.name(globals.symbol(i));
+            // A fresh interpreter defines its natives itself.
+            if (interpreter.natives.contains(name) &&
+                writer.isNative(globals.value(i))) {
+                continue;
+            }
+            names.add(name);
+            writer.global = name;
+            writer.writeRef(values.next(), globals.value(i));
+        }
+
+        SectionWriter objects = new SectionWriter();
+        for (int id = 0; id < writer.objects.size(); id++) {
+            writer.global = writer.globals.get(id);
+            writer.writeObject(objects.next(), writer.objects.get(id));
+        }
+
+        SectionWriter tokens = new SectionWriter();
+        for (int i = 0; i < ast.tokenCount; i++) {
+            Token token = ast.tokens[i];
+            DataOutputStream out = tokens.next();
+            out.writeInt(token.type.ordinal());
+            out.writeInt(token.line);
+            ProgramCache.writeString(out, token.lexeme);
+            ProgramCache.writeValue(out, token.literal);
+        }
+
+        SectionWriter constants = new SectionWriter();
+        for (int i = 0; i < ast.constantCount; i++) {
+            ProgramCache.writeValue(constants.next(), ast.constants[i]);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(FlatAst.SCHEMA);
+            out.write(ProgramCache.BUILD);
+            ProgramCache.writeInts(out, ast.nodes,
+                ast.nodeCount * FlatAst.NODE_SIZE);
+            ProgramCache.writeInts(out, ast.lists, ast.listsSize);
+            ProgramCache.writeInts(out, depths, depths.length);
+            tokens.writeTo(out);
+            constants.writeTo(out);
+            objects.writeTo(out);
+            values.writeTo(out);
+            out.writeInt(names.size());
+            for (String name : names) ProgramCache.writeString(out, name);
+        }
+    }
+
+    private static class SectionWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private int[] offsets = new int[16];
+        private int count = 0;
+
+        DataOutputStream next() {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = out.size();
+            return out;
+        }
+
+        void writeTo(DataOutputStream file) throws IOException {
+            ProgramCache.writeInts(file, offsets, count);
+            file.writeInt(out.size());
+            bytes.writeTo(file);
+        }
+    }
+
+    private static class Writer {
+        private final Interpreter interpreter;
+        private final Map<Stmt, Integer> declarations;
+        private final Map<Object, Integer> ids = new IdentityHashMap<>();
+        final List<Object> objects = new ArrayList<>();
+        // The global each object was first reached from, for errors.
+        final List<String> globals = new ArrayList<>();
+        String global;
+
+        Writer(Interpreter interpreter, Map<Stmt, Integer> declarations) {
+            this.interpreter = interpreter;
+            this.declarations = declarations;
+            id(interpreter.globals);
+        }
+
+        private int id(Object object) {
+            if (object == null) return -1;
+            Integer id = ids.get(object);
+            if (id == null) {
+                id = objects.size();
+                ids.put(object, id);
+                objects.add(object);
+                globals.add(global);
+            }
+            return id;
+        }
+
+        boolean isNative(Object value) {
+            return value instanceof LoxCallable &&
+                !(value instanceof LoxFunction) && !(value instanceof LoxClass);
+        }
+
+        void writeRef(DataOutputStream out, Object value) throws IOException {
+            if (value instanceof Environment || value instanceof LoxFunction ||
+                value instanceof LoxClass || value instanceof LoxInstance ||
+                value instanceof LoxList || value instanceof LoxMap ||
+                value instanceof LoxSet) {
+                out.writeByte(OBJECT);
+                out.writeInt(id(value));
+            } else if (isNative(value)) {
+                out.writeByte(NATIVE);
+                ProgramCache.writeString(out, nativeName(value));
+            } else if (value == null || value instanceof Boolean ||
+                value instanceof Double || LoxString.isString(value)) {
+                ProgramCache.writeValue(out, value);
+            } else {
+                throw new IllegalArgumentException("Can't snapshot " +
+                    Interpreter.stringify(value) + " in global '" + global + "'.");
+            }
+        }
+
+        private String nativeName(Object value) {
+            for (String name : interpreter.natives) {
+                if (interpreter.globals.values.get(Symbols.intern(name)) == value) {
+                    return name;
+                }
+            }
+            throw new IllegalArgumentException(
+                "Can't snapshot native value " + value + ".");
+        }
+
+        void writeObject(DataOutputStream out, Object object) throws IOException {
+            if (object == interpreter.globals) {
+                // Never read back; the loading interpreter's globals stand in.
+                out.writeByte(ENVIRONMENT);
+                out.writeInt(-1);
+                out.writeByte(0);
+                out.writeInt(0);
+            } else if (object instanceof Environment) {
+                Environment environment = (Environment)object;
+                out.writeByte(ENVIRONMENT);
+                out.writeInt(id(environment.parent));
+                out.writeByte(environment.globals == environment ? 1 : 0);
+                writeEntries(out, environment.values);
+            } else if (object instanceof LoxFunction) {
+                LoxFunction function = (LoxFunction)object;
+                Integer node = declarations.get(function.declaration);
+                if (node == null) {
+                    throw new IllegalArgumentException(
+                        "Can't snapshot " + function + " from outside the prelude.");
+                }
+                out.writeByte(FUNCTION);
+                out.writeInt(node);
+                out.writeInt(id(function.closure));
+                out.writeByte(function.isInitializer ? 1 : 0);
+            } else if (object instanceof LoxClass) {
+                LoxClass klass = (LoxClass)object;
+                out.writeByte(CLASS);
+                ProgramCache.writeString(out, klass.name);
+                out.writeInt(id(klass.superclass));
+                out.writeInt(klass.methods.size());
+                for (int i = 0; i < klass.methods.size(); i++) {
+                    ProgramCache.writeString(out,
+                        Symbols.name(klass.methods.symbol(i)));
+                    out.writeInt(id(klass.methods.value(i)));
+                }
+            } else if (object instanceof LoxInstance) {
+                LoxInstance instance = (LoxInstance)object;
+                out.writeByte(INSTANCE);
+                out.writeInt(id(instance.klass));
+                writeEntries(out, instance instanceof JsonObject
+                    ? ((JsonObject)instance).allFields() : instance.fields);
+            } else if (object instanceof LoxList) {
+                List<Object> items = ((LoxList)object).items;
+                out.writeByte(LIST);
+                out.writeInt(items.size());
+                for (Object item : items) writeRef(out, item);
+            } else {
+                boolean isMap = object instanceof LoxMap;
+                HashTable table = isMap ? ((LoxMap)object).table
+                    : ((LoxSet)object).table;
+                out.writeByte(isMap ? MAP : SET);
+                out.writeInt(table.size());
+                for (int slot = table.next(-1); slot >= 0; slot = table.next(slot)) {
+                    writeRef(out, table.key(slot));
+                    if (isMap) writeRef(out, table.value(slot));
+                }
+            }
+        }
+
+        private void writeEntries(DataOutputStream out,
+                                  SymbolMap<Object> entries) throws IOException {
+            out.writeInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                ProgramCache.writeString(out, Symbols.name(entries.symbol(i)));
+                writeRef(out, entries.value(i));
+            }
+        }
+    }
+}
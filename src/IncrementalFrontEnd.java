@@ -0,0 +1,366 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the scanner, parser and resolver results for one file and updates
+// them as it is edited. Every top-level declaration keeps its own tokens,
+// tree, resolution results and errors. An edit re-scans from the
+// declaration before it until scanning lines up with an untouched
+// declaration again, and re-parses and re-resolves only what changed.
+//
+// Diagnostics are the same as scanning, parsing and resolving the whole
+// file. Declarations after an edit that adds or removes lines keep their
+// old trees, so their tokens' lines are off by lineShift(i).
+class IncrementalFrontEnd {
+    private static class Declaration {
+        // Offset and line where this declaration's part of the source
+        // starts: its first token, or the start of the file for the first.
+        int start;
+        int line;
+        // Lines inserted before it since it was scanned.
+        int shift;
+
+        Token[] tokens;
+        // Token starts and lines, relative to start and line.
+        int[] offsets;
+        int[] lines;
+
+        Stmt statement;
+        List<Diagnostics.Entry> scanErrors = new ArrayList<>();
+        // The token each scan error came before, relative to this one.
+        int[] scanErrorTokens;
+        List<Diagnostics.Entry> parseErrors;
+        List<Diagnostics.Entry> resolveErrors;
+        Map<Expr, Integer> locals;
+    }
+
+    private String source = "";
+    private int endLine = 1;
+    private final List<Declaration> declarations = new ArrayList<>();
+    // Scan errors in a file without any tokens.
+    private List<Diagnostics.Entry> orphans = new ArrayList<>();
+
+    IncrementalFrontEnd(String source) {
+        edit(0, 0, source);
+    }
+
+    String source() {
+        return source;
+    }
+
+    // Replaces source[start, end) with the given text.
+    void edit(int start, int end, String replacement) {
+        int removedLines = countLines(source, start, end);
+        int addedLines = countLines(replacement, 0, replacement.length());
+        source = source.substring(0, start) + replacement + source.substring(end);
+        int delta = replacement.length() - (end - start);
+        int lineDelta = addedLines - removedLines;
+        endLine += lineDelta;
+
+        // The declaration before the edit may look ahead into it, as an
+        // 'if' does for 'else'.
+        int first = Math.max(0, declarationAt(start) - 1);
+        // Declarations that start after the edit may be reusable.
+        int resume = declarationAt(end) + 1;
+        for (int i = resume; i < declarations.size(); i++) {
+            Declaration declaration = declarations.get(i);
+            declaration.start += delta;
+            declaration.line += lineDelta;
+            declaration.shift += lineDelta;
+        }
+
+        int regionStart = 0;
+        int regionLine = 1;
+        if (first < declarations.size()) {
+            regionStart = declarations.get(first).start;
+            regionLine = declarations.get(first).line;
+        }
+        reparse(first, resume, regionStart, regionLine);
+    }
+
+    List<Stmt> statements() {
+        List<Stmt> statements = new ArrayList<>(declarations.size());
+        for (Declaration declaration : declarations) {
+            statements.add(declaration.statement);
+        }
+        return statements;
+    }
+
+    int lineShift(int index) {
+        return declarations.get(index).shift;
+    }
+
+    Map<Expr, Integer> locals() {
+        Map<Expr, Integer> locals = new HashMap<>();
+        for (Declaration declaration : declarations) {
+            if (declaration.locals != null) locals.putAll(declaration.locals);
+        }
+        return locals;
+    }
+
+    // In the order a full run reports them: scan errors, then parse
+    // errors, then resolution errors if there were no others.
+    List<String> diagnostics() {
+        List<String> messages = new ArrayList<>();
+        for (Diagnostics.Entry error : orphans) messages.add(error.toString());
+        for (Declaration declaration : declarations) {
+            for (Diagnostics.Entry error : declaration.scanErrors) {
+                messages.add(error.shift(declaration.shift).toString());
+            }
+        }
+        for (Declaration declaration : declarations) {
+            for (Diagnostics.Entry error : declaration.parseErrors) {
+                messages.add(error.shift(declaration.shift).toString());
+            }
+        }
+        if (!messages.isEmpty()) return messages;
+
+        for (Declaration declaration : declarations) {
+            for (Diagnostics.Entry error : declaration.resolveErrors) {
+                messages.add(error.shift(declaration.shift).toString());
+            }
+        }
+        return messages;
+    }
+
+    private void reparse(int first, int resume, int regionStart,
+                         int regionLine) {
+        // Scan until a lexeme would start where a reusable declaration does.
+        List<Integer> scanErrorTokens = new ArrayList<>();
+        Scanner[] scanning = new Scanner[1];
+        Diagnostics scanDiagnostics = new Diagnostics() {
+            @Override
+            void report(Entry error) {
+                super.report(error);
+                scanErrorTokens.add(scanning[0].tokenCount());
+            }
+        };
+        Scanner scanner = new Scanner(source, regionStart, regionLine,
+            scanDiagnostics);
+        scanning[0] = scanner;
+        int[] candidate = { resume };
+        List<Token> scanned = scanner.scanTokens(offset -> {
+            while (candidate[0] < declarations.size() &&
+                   declarations.get(candidate[0]).start < offset) {
+                candidate[0]++;
+            }
+            return candidate[0] < declarations.size() &&
+                   declarations.get(candidate[0]).start == offset;
+        });
+        // A lexeme like an unterminated string can run over declarations
+        // without starting a new one in between.
+        while (candidate[0] < declarations.size() &&
+               declarations.get(candidate[0]).start < scanner.position()) {
+            candidate[0]++;
+        }
+
+        TokenStream stream = new TokenStream(scanner, scanned, candidate[0]);
+        for (int i = 0; i < scanDiagnostics.errors.size(); i++) {
+            stream.addScanError(scanErrorTokens.get(i),
+                scanDiagnostics.errors.get(i));
+        }
+
+        Diagnostics parseDiagnostics = new Diagnostics();
+        Parser parser = new Parser(stream, parseDiagnostics);
+        List<Declaration> created = new ArrayList<>();
+        int reused = declarations.size();
+        while (!parser.isAtEnd()) {
+            int before = parser.position();
+            int errors = parseDiagnostics.errors.size();
+            Stmt statement = parser.parseDeclaration();
+            int after = parser.position();
+
+            Declaration declaration = new Declaration();
+            declaration.start = created.isEmpty() ? regionStart : stream.offset(before);
+            declaration.line = created.isEmpty() ? regionLine : stream.line(before);
+            declaration.statement = statement;
+            declaration.parseErrors = new ArrayList<>(
+                parseDiagnostics.errors.subList(errors, parseDiagnostics.errors.size()));
+            stream.fill(declaration, before, after);
+            resolve(declaration);
+            created.add(declaration);
+
+            int boundary = stream.boundary(after);
+            if (boundary >= 0) {
+                reused = boundary;
+                break;
+            }
+        }
+
+        // Every scan error has a token before it to belong to, unless the
+        // file has no tokens at all. Otherwise unclaimed errors were read
+        // ahead from a reused declaration, which still has them.
+        orphans = created.isEmpty() ? stream.trailingErrors() : new ArrayList<>();
+
+        List<Declaration> replaced = declarations.subList(first, reused);
+        replaced.clear();
+        replaced.addAll(created);
+    }
+
+    private void resolve(Declaration declaration) {
+        declaration.locals = new IdentityHashMap<>();
+        Diagnostics diagnostics = new Diagnostics();
+        // A tree with syntax errors has holes, and a full run wouldn't
+        // resolve it either.
+        if (declaration.parseErrors.isEmpty()) {
+            new Resolver(declaration.locals, diagnostics)
+                .resolve(Arrays.asList(declaration.statement));
+        }
+        declaration.resolveErrors = diagnostics.errors;
+    }
+
+    // The last declaration starting at or before offset, or -1.
+    private int declarationAt(int offset) {
+        int low = 0;
+        int high = declarations.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (declarations.get(middle).start <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private static int countLines(String text, int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    // The freshly scanned tokens followed by those of the declarations
+    // after them, appended only as far as the parser actually reads.
+    private class TokenStream extends AbstractList<Token> {
+        private final List<Token> tokens = new ArrayList<>();
+        private int[] offsets = new int[64];
+        private int[] lines = new int[64];
+        private final Map<Integer, Integer> boundaries = new HashMap<>();
+        private final List<Integer> errorTokens = new ArrayList<>();
+        private final List<Diagnostics.Entry> errors = new ArrayList<>();
+        private int next;
+        private boolean ended = false;
+        private int claimed = 0;
+
+        TokenStream(Scanner scanner, List<Token> scanned, int next) {
+            this.next = next;
+            for (int i = 0; i < scanned.size(); i++) {
+                add(scanner.tokenStart(i), scanner.tokenStartLine(i),
+                    scanned.get(i), 0);
+            }
+        }
+
+        private void add(int offset, int line, Token token, int shift) {
+            if (tokens.size() == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            offsets[tokens.size()] = offset;
+            lines[tokens.size()] = line;
+            if (token != null && shift != 0) {
+                token = new Token(token.type, token.lexeme, token.literal,
+                    token.line + shift);
+            }
+            tokens.add(token);
+        }
+
+        void addScanError(int token, Diagnostics.Entry error) {
+            errorTokens.add(token);
+            errors.add(error);
+        }
+
+        @Override
+        public Token get(int index) {
+            while (index >= tokens.size()) appendNext();
+            return tokens.get(index);
+        }
+
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+
+        int offset(int index) {
+            return offsets[index];
+        }
+
+        int line(int index) {
+            return lines[index];
+        }
+
+        // The index of the declaration whose tokens start at the given
+        // index, or -1 if none does.
+        int boundary(int index) {
+            if (index == tokens.size() && !ended &&
+                next < declarations.size()) {
+                return next;
+            }
+            Integer declaration = boundaries.get(index);
+            return declaration == null ? -1 : declaration;
+        }
+
+        private void appendNext() {
+            if (next >= declarations.size()) {
+                if (ended) throw new IllegalStateException("Read past Eof.");
+                add(source.length(), endLine,
+                    new Token(TokenType.Eof, "", null, endLine), 0);
+                ended = true;
+                return;
+            }
+
+            Declaration declaration = declarations.get(next);
+            int base = tokens.size();
+            boundaries.put(base, next);
+            for (int i = 0; i < declaration.tokens.length; i++) {
+                add(declaration.start + declaration.offsets[i],
+                    declaration.line + declaration.lines[i],
+                    declaration.tokens[i], declaration.shift);
+            }
+            for (int i = 0; i < declaration.scanErrors.size(); i++) {
+                // Stored relative to the token before the error.
+                addScanError(base + declaration.scanErrorTokens[i] + 1,
+                    declaration.scanErrors.get(i).shift(declaration.shift));
+            }
+            next++;
+        }
+
+        // Hands tokens [before, after) and the scan errors between them
+        // to a new declaration. An error belongs to the token before it,
+        // so text after a declaration's last token is part of it.
+        void fill(Declaration declaration, int before, int after) {
+            int count = after - before;
+            declaration.tokens = tokens.subList(before, after).toArray(new Token[0]);
+            declaration.offsets = new int[count];
+            declaration.lines = new int[count];
+            for (int i = 0; i < count; i++) {
+                declaration.offsets[i] = offsets[before + i] - declaration.start;
+                declaration.lines[i] = lines[before + i] - declaration.line;
+            }
+
+            List<Integer> owners = new ArrayList<>();
+            while (claimed < errors.size()) {
+                int owner = Math.max(0, errorTokens.get(claimed) - 1);
+                if (owner >= after) break;
+                owners.add(owner - before);
+                declaration.scanErrors.add(errors.get(claimed));
+                claimed++;
+            }
+            declaration.scanErrorTokens = new int[owners.size()];
+            for (int i = 0; i < owners.size(); i++) {
+                declaration.scanErrorTokens[i] = owners.get(i);
+            }
+        }
+
+        // Scan errors after the last declaration's tokens.
+        List<Diagnostics.Entry> trailingErrors() {
+            return new ArrayList<>(errors.subList(claimed, errors.size()));
+        }
+    }
+}
@@ -1,15 +1,57 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 class Interpreter implements Expr.Visitor<Object>,
                              Stmt.Visitor<Void> {  
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    final Diagnostics diagnostics;
+    final Environment globals;
+    private Environment environment;
+    // What the Resolver finds for code compiled in this interpreter.
+    final Map<Expr, Integer> locals;
+    // The resolution of the code running now: locals, an imported
+    // module's, or a CompiledProgram's. Functions remember theirs.
+    Map<Expr, Integer> resolution;
+    final Set<String> natives;
+    // Imports are looked up relative to the running script.
+    Path directory = Paths.get("").toAbsolutePath();
+    final Map<LoxModule, Environment> modules;
+    OutputSink output = OutputSink.stdout;
+    // The caches of functions Purity found can be memoized, and per
+    // top-level scope, the ones that depend on each of its names.
+    final Map<Stmt.Function, Memo> memos;
+    private final Map<Environment, Map<Integer, List<Memo>>> pinned;
+    // Created by the first socket native called.
+    private EventLoop events;
+    // Created by the first fiber native called. From then on Lox code
+    // runs only between enter() and leave().
+    private Fibers fibers;
+    // The limits on each run, if any, and the fuel and memory this
+    // interpreter may still use before asking it for more.
+    Budget budget;
+    long fuel = Budget.UNLIMITED;
+    private long memory = Budget.UNLIMITED;
 
     Interpreter() {
+        this(Lox.diagnostics);
+    }
+
+    // Compile and runtime errors go to diagnostics.
+    Interpreter(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        globals = new Environment();
+        environment = globals;
+        locals = new HashMap<>();
+        resolution = locals;
+        modules = new HashMap<>();
+        memos = new HashMap<>();
+        pinned = new HashMap<>();
         globals.define("clock", new LoxCallable() {
             @Override
             public int arity() { return 0; }
@@ -23,31 +65,217 @@ class Interpreter implements Expr.Visitor<Object>,
             @Override
             public String toString() { return "<native fn>"; }
         });
+        globals.define("DoubleArray", DoubleArray.constructor());
+        globals.define("Map", LoxMap.constructor());
+        globals.define("Set", LoxSet.constructor());
+        globals.define("StringBuilder", LoxStringBuilder.constructor());
+        globals.define("List", LoxList.constructor());
+        globals.define("parseNumber", StringMethods.parseNumber());
+        globals.define("formatNumber", StringMethods.formatNumber());
+        globals.define("jsonParse", Json.parse());
+        globals.define("jsonStringify", Json.stringify());
+        globals.define("jsonReader", Json.reader());
+        globals.define("memoize", Memo.memoize());
+        globals.define("memoStats", Memo.stats());
+        globals.define("listen", EventLoop.listen());
+        globals.define("runEvents", EventLoop.run());
+        globals.define("stopEvents", EventLoop.stop());
+        globals.define("regex", Regex.constructor());
+        globals.define("regexMatch", Regex.matchNative());
+        globals.define("regexFindAll", Regex.findAllNative());
+        globals.define("regexReplace", Regex.replaceNative());
+        globals.define("regexSplit", Regex.splitNative());
+        globals.define("regexStats", Regex.stats());
+        globals.define("spawn", Fibers.spawnNative());
+        globals.define("await", Fibers.awaitNative());
+        globals.define("Channel", LoxChannel.constructor());
+        globals.define("select", Fibers.selectNative());
+        globals.define("sleep", Fibers.sleepNative());
+        globals.define("parallelMap", Parallel.mapNative());
+        globals.define("parallelReduce", Parallel.reduceNative());
+
+        natives = new HashSet<>();
+        for (int i = 0; i < globals.values.size(); i++) {
+            natives.add(Symbols.name(globals.values.symbol(i)));
+        }
+    }
+
+    // An interpreter for another thread, a fiber's or a parallel
+    // worker's: the same globals, modules and caches as parent, and its
+    // own place in the program.
+    Interpreter(Interpreter parent) {
+        diagnostics = parent.diagnostics;
+        globals = parent.globals;
+        environment = globals;
+        locals = parent.locals;
+        resolution = locals;
+        natives = parent.natives;
+        directory = parent.directory;
+        modules = parent.modules;
+        output = parent.output;
+        memos = parent.memos;
+        pinned = parent.pinned;
+        fibers = parent.fibers;
+        budget = parent.budget;
+        if (budget != null) {
+            fuel = 0;
+            memory = 0;
+        }
+    }
+
+    // A parallel worker's interpreter. Its caller holds the fiber lock
+    // for it while it runs, so it mustn't give the lock up at yield
+    // points, from a thread that doesn't own it.
+    static Interpreter worker(Interpreter parent) {
+        Interpreter worker = new Interpreter(parent);
+        worker.fibers = null;
+        return worker;
     }
 
     void interpret(List<Stmt> statements) {
+        enter();
         try {
+            Purity.analyze(this, statements, globals);
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            diagnostics.runtimeError(error);
+        } catch (StackOverflowError error) {
+            diagnostics.runtimeError(new RuntimeError(null, "Stack overflow."));
+        } finally {
+            leave();
+        }
+    }
+
+    // Runs a program compiled elsewhere, reading its resolution in place.
+    void interpret(CompiledProgram program) {
+        Map<Expr, Integer> previous = resolution;
+        resolution = program.locals;
+        try {
+            interpret(program.statements);
+        } finally {
+            resolution = previous;
         }
     }
 
     void interpret(Expr expression) {
+        enter();
         try {
             Object value = evaluate(expression);
-            System.out.println(stringify(value));
+            output.println(value);
           } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            diagnostics.runtimeError(error);
+          } catch (StackOverflowError error) {
+            diagnostics.runtimeError(new RuntimeError(null, "Stack overflow."));
+          } finally {
+            leave();
           }
     }
 
+    // Around Lox code called from outside: each time is a run with a new
+    // budget, and once fibers exist, only one of them runs at a time.
+    void enter() {
+        if (budget != null) {
+            fuel = budget.reset();
+            memory = 0;
+        }
+        if (fibers != null) fibers.enter();
+    }
+
+    void leave() {
+        if (fibers != null) fibers.leave();
+    }
+
+    // The calling thread is running Lox code, so it takes the lock of
+    // fibers it creates.
+    Fibers fibers() {
+        if (fibers == null) {
+            fibers = new Fibers();
+            fibers.enter();
+        }
+        return fibers;
+    }
+
+    // The fibers, without creating them: null until the first spawn.
+    Fibers fibersIfStarted() {
+        return fibers;
+    }
+
+    EventLoop events() {
+        if (events == null) {
+            try {
+                events = new EventLoop(this);
+            } catch (IOException error) {
+                throw NativeFunction.error("Can't start the event loop: " +
+                    error.getMessage());
+            }
+        }
+        return events;
+    }
+
+    // Called when fuel runs out: a yield point, or the end of the run.
+    void refuel(Token where) {
+        if (budget == null) {
+            fuel = Budget.UNLIMITED;
+            return;
+        }
+        long more = budget.takeFuel();
+        if (more == 0) {
+            fuel = 0;
+            throw new RuntimeError(where, "Out of fuel.");
+        }
+        if (budget.hook != null) budget.hook.run();
+        if (fibers != null) fibers.pass();
+        fuel = more;
+    }
+
+    // Counts bytes against the run's memory limit.
+    void allocate(Token where, long bytes) {
+        if ((memory -= bytes) < 0) reserve(where);
+    }
+
+    private void reserve(Token where) {
+        if (budget == null) {
+            memory = Budget.UNLIMITED;
+            return;
+        }
+        long more = budget.takeMemory(-memory);
+        if (more < 0) {
+            memory = 0;
+            throw new RuntimeError(where, "Out of memory.");
+        }
+        memory += more;
+    }
+
+    void pin(Environment scope, int symbol, Memo memo) {
+        pinned.computeIfAbsent(scope, key -> new HashMap<>())
+            .computeIfAbsent(symbol, key -> new ArrayList<>()).add(memo);
+    }
+
+    // Stops memoizing the functions that depend on a top-level name, which
+    // is about to be bound to something else.
+    void unpin(Environment scope, int symbol) {
+        Map<Integer, List<Memo>> names = pinned.get(scope);
+        List<Memo> dependents = names == null ? null : names.remove(symbol);
+        if (dependents == null) return;
+        for (Memo memo : dependents) memo.invalidate();
+    }
+
     void resolve(Expr expr, int depth) {
         locals.put(expr, depth);
     }
 
+    Integer resolvedDepth(Expr expr) {
+        Integer depth = locals.get(expr);
+        if (depth != null) return depth;
+        for (LoxModule module : modules.keySet()) {
+            depth = module.locals.get(expr);
+            if (depth != null) return depth;
+        }
+        return null;
+    }
+
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
       evaluate(stmt.expression);
@@ -56,8 +284,10 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
+        allocate(stmt.name, Budget.FUNCTION);
+        LoxFunction function = new LoxFunction(stmt, environment, false,
+            resolution, memos.get(stmt));
+        environment.define(stmt.name, function);
         return null;
     }
 
@@ -72,18 +302,19 @@ class Interpreter implements Expr.Visitor<Object>,
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        environment.define(stmt.name, null);
 
         if (stmt.superclass != null) {
             environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment.values.put(Symbols.SUPER, superclass);
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        SymbolMap<LoxFunction> methods = new SymbolMap<>();
         for (Stmt.Function method : stmt.methods) {
+            allocate(method.name, Budget.FUNCTION);
             LoxFunction function = new LoxFunction(method, environment,
-                method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+                method.name.symbol == Symbols.INIT, resolution);
+            methods.put(method.name.symbol, function);
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme,
@@ -102,6 +333,12 @@ class Interpreter implements Expr.Visitor<Object>,
         if (object instanceof LoxInstance) {
             return ((LoxInstance) object).get(expr.name);
         }
+        if (object instanceof NativeObject) {
+            return ((NativeObject) object).get(expr.name);
+        }
+        if (LoxString.isString(object)) {
+            return StringMethods.bind((CharSequence) object, expr.name);
+        }
   
         throw new RuntimeError(expr.name,
             "Only instances have properties.");
@@ -123,14 +360,14 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
+        int distance = resolution.get(expr);
         LoxClass superclass = (LoxClass)environment.getAt(
-            distance, "super");
+            distance, Symbols.SUPER);
     
         LoxInstance object = (LoxInstance)environment.getAt(
-            distance - 1, "this");
+            distance - 1, Symbols.THIS);
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        LoxFunction method = superclass.findMethod(expr.method.symbol);
         if (method == null) {
             throw new RuntimeError(expr.method,
                 "Undefined property '" + expr.method.lexeme + "'.");
@@ -155,7 +392,7 @@ class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
         Object value = stmt.initializer == null ? null : evaluate(stmt.initializer);
-        environment.define(stmt.name.lexeme, value);
+        environment.define(stmt.name, value);
                
         return null;
     }
@@ -170,10 +407,55 @@ class Interpreter implements Expr.Visitor<Object>,
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        LoxModule module = ModuleLoader.load(
+            ModuleLoader.resolve(directory, (String)stmt.path.literal));
+        if (module.error != null) {
+            throw new RuntimeError(stmt.path, module.error);
+        }
+
+        Environment exports;
+        if (modules.containsKey(module)) {
+            exports = modules.get(module);
+            if (exports == null) {
+                throw new RuntimeError(stmt.path,
+                    "Circular import of '" + stmt.path.literal + "'.");
+            }
+        } else {
+            // Run the module once, in its own top-level namespace. If it
+            // fails, it's forgotten, so importing it again runs it again
+            // rather than looking circular.
+            modules.put(module, null);
+            exports = new Environment(globals, true);
+            Path previous = directory;
+            boolean ran = false;
+            try {
+                Purity.analyze(this, module.statements, exports);
+                directory = module.path.getParent();
+                executeBlock(module.statements, exports, module.locals);
+                ran = true;
+            } finally {
+                directory = previous;
+                if (!ran) modules.remove(module);
+            }
+            modules.put(module, exports);
+        }
+
+        for (int i = 0; i < exports.values.size(); i++) {
+            if (environment == environment.globals) {
+                unpin(environment, exports.values.symbol(i));
+            }
+            environment.values.put(exports.values.symbol(i),
+                exports.values.value(i));
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
       Object value = evaluate(stmt.expression);
-      System.out.println(stringify(value));
+      output.println(value);
       return null;
     }
 
@@ -187,10 +469,23 @@ class Interpreter implements Expr.Visitor<Object>,
     public Void visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
             execute(stmt.body);
+            if (--fuel < 0) refuel(stmt.keyword);
         }
         return null;
     }
 
+    // Runs code resolved elsewhere, a function body or a module.
+    void executeBlock(List<Stmt> statements, Environment environment,
+                      Map<Expr, Integer> resolution) {
+        Map<Expr, Integer> previous = this.resolution;
+        try {
+            this.resolution = resolution;
+            executeBlock(statements, environment);
+        } finally {
+            this.resolution = previous;
+        }
+    }
+
     void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
@@ -220,11 +515,11 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
+        Integer distance = resolution.get(expr);
         if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+            return environment.getAt(distance, name.symbol);
         } else {
-            return globals.get(name);
+            return environment.globals.get(name);
         }
     }
 
@@ -232,11 +527,13 @@ class Interpreter implements Expr.Visitor<Object>,
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
+        Integer distance = resolution.get(expr);
         if (distance != null) {
           environment.assignAt(distance, expr.name, value);
         } else {
-          globals.assign(expr.name, value);
+          unpin(environment.globals, expr.name.symbol);
+          unpin(globals, expr.name.symbol);
+          environment.globals.assign(expr.name, value);
         }
 
         return value;
@@ -298,8 +595,15 @@ class Interpreter implements Expr.Visitor<Object>,
                 if (left instanceof Double && right instanceof Double) {
                   return (double)left + (double)right;
                 } 
-                if (left instanceof String && right instanceof String) {
-                  return (String)left + (String)right;
+                if (LoxString.isString(left) && LoxString.isString(right)) {
+                  CharSequence first = (CharSequence)left;
+                  CharSequence second = (CharSequence)right;
+                  // A rope copies nothing until it's flattened, which
+                  // counts then.
+                  Object joined = LoxString.concat(first, second, budget);
+                  allocate(expr.operator, joined instanceof Rope ? Budget.ROPE
+                      : Budget.string((long)first.length() + second.length()));
+                  return joined;
                 }
                 break;
             case Slash:
@@ -334,7 +638,14 @@ class Interpreter implements Expr.Visitor<Object>,
                 "Can only call functions and classes.");
         }
 
-        return function.call(this, arguments);
+        if (--fuel < 0) refuel(expr.paren);
+        try {
+            return function.call(this, arguments);
+        } catch (RuntimeError error) {
+            // Natives don't know where they were called from.
+            if (error.token != null) throw error;
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
     }
 
     @Override
@@ -365,23 +676,28 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     private boolean isEqual(Object a, Object b) {
+        if (LoxString.isString(a) && LoxString.isString(b)) {
+            return LoxString.equal((CharSequence)a, (CharSequence)b);
+        }
         if (a == null && b == null) return true;
         if (a == null) return false;
     
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
     
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
+        if (object instanceof Double) return stringify((double)object);
     
         return object.toString();
     }
+
+    static String stringify(double number) {
+        String text = Double.toString(number);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
 }
\ No newline at end of file
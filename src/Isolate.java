@@ -0,0 +1,155 @@
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// An interpreter for embedding, with its own globals, output, and errors.
+// Isolates share nothing mutable, so any number of them can run at once
+// on different threads; each one runs one thing at a time.
+//
+//   Isolate isolate = new Isolate(out);
+//   if (!isolate.run(source)) report(isolate.errors());
+//   Object reply = isolate.call("handle", request);
+//
+// A CompiledProgram can be run instead of source, to compile only once.
+//
+// Output is buffered and flushed to out at the end of each run or call.
+public class Isolate {
+    private final Diagnostics diagnostics = new Diagnostics();
+    private final Interpreter interpreter = new Interpreter(diagnostics);
+
+    public Isolate(OutputStream out) {
+        interpreter.output = new OutputSink(out, "exit");
+    }
+
+    // Where imports are looked up; the working directory by default.
+    public synchronized void setDirectory(Path directory) {
+        interpreter.directory = directory.toAbsolutePath();
+    }
+
+    // Limits each later run and call to fuel steps, a step being a call
+    // or a pass around a loop, and to memory bytes of what it creates, as
+    // Budget estimates them; 0 means no limit. One that goes over ends
+    // with a runtime error. Every slice steps, hook, unless null, is
+    // called on the running thread, to let other tenants go first or to
+    // end the run by throwing.
+    public synchronized void setLimits(long fuel, long memory, long slice,
+                                       Runnable hook) {
+        if (fuel <= 0 && memory <= 0 && hook == null) {
+            interpreter.budget = null;
+            interpreter.fuel = Budget.UNLIMITED;
+            return;
+        }
+        interpreter.budget = new Budget(
+            fuel > 0 ? fuel : Budget.UNLIMITED,
+            memory > 0 ? memory : Budget.UNLIMITED,
+            slice > 0 ? slice : Budget.SLICE, hook);
+    }
+
+    // Compiles and runs source in this isolate's globals, which earlier
+    // runs may have defined. Returns whether it ran without errors.
+    public synchronized boolean run(String source) {
+        diagnostics.clear();
+        Scanner scanner = new FastScanner(source, diagnostics);
+        List<Stmt> statements = new Parser(scanner.scanTokens(), diagnostics).parse();
+        if (diagnostics.hadError()) return false;
+
+        ModuleLoader.prefetch(interpreter.directory, statements);
+        new Resolver(interpreter).resolve(statements);
+        ModuleLoader.await(interpreter.directory, statements, diagnostics);
+        if (diagnostics.hadError()) return false;
+
+        try {
+            interpreter.interpret(statements);
+        } catch (RuntimeException error) {
+            internalError(error);
+        } finally {
+            interpreter.output.flush();
+        }
+        return !diagnostics.hadRuntimeError();
+    }
+
+    // Runs a program compiled once for any number of isolates, which
+    // may run it at the same time.
+    public synchronized boolean run(CompiledProgram program) {
+        diagnostics.clear();
+        for (Diagnostics.Entry error : program.errors) diagnostics.report(error);
+        if (diagnostics.hadError()) return false;
+
+        try {
+            interpreter.interpret(program);
+        } catch (RuntimeException error) {
+            internalError(error);
+        } finally {
+            interpreter.output.flush();
+        }
+        return !diagnostics.hadRuntimeError();
+    }
+
+    // Calls the global function name. Java numbers become Lox numbers and
+    // CharSequences strings. Returns the Lox value it returns, or null
+    // after a runtime error.
+    public synchronized Object call(String name, Object... arguments) {
+        diagnostics.clear();
+        Object function = interpreter.globals.values.get(Symbols.intern(name));
+        List<Object> values = new ArrayList<>();
+        for (Object argument : arguments) values.add(value(argument));
+
+        interpreter.enter();
+        try {
+            if (!(function instanceof LoxCallable)) {
+                throw NativeFunction.error("Undefined function '" + name + "'.");
+            }
+            LoxCallable callable = (LoxCallable)function;
+            if (callable.arity() != values.size()) {
+                throw NativeFunction.error("Expected " + callable.arity() +
+                    " arguments but got " + values.size() + ".");
+            }
+            return callable.call(interpreter, values);
+        } catch (RuntimeError error) {
+            diagnostics.runtimeError(error);
+            return null;
+        } catch (StackOverflowError error) {
+            diagnostics.runtimeError(new RuntimeError(null, "Stack overflow."));
+            return null;
+        } catch (RuntimeException error) {
+            internalError(error);
+            return null;
+        } finally {
+            interpreter.leave();
+            interpreter.output.flush();
+        }
+    }
+
+    // A Java exception from the interpreter itself is the embedder's
+    // problem only as a failed run.
+    private void internalError(RuntimeException error) {
+        diagnostics.runtimeError(new RuntimeError(null, "Internal error: " + error));
+    }
+
+    private static Object value(Object argument) {
+        if (argument instanceof Number) return ((Number)argument).doubleValue();
+        if (argument instanceof CharSequence) return argument.toString();
+        return argument;
+    }
+
+    public synchronized boolean hadError() {
+        return diagnostics.hadError();
+    }
+
+    public synchronized boolean hadRuntimeError() {
+        return diagnostics.hadRuntimeError();
+    }
+
+    // The errors from the last run or call, as the command line prints them.
+    public synchronized List<String> errors() {
+        List<String> errors = new ArrayList<>();
+        for (Diagnostics.Entry error : diagnostics.errors) {
+            errors.add(error.toString());
+        }
+        for (RuntimeError error : diagnostics.runtimeErrors) {
+            errors.add(Diagnostics.describe(error));
+        }
+        return errors;
+    }
+}
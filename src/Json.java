@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+// The JSON natives: jsonParse(text), jsonStringify(value) and
+// jsonReader(path), which streams a file's values through a JsonReader.
+class Json {
+    private static final int MAX_DEPTH = 512;
+
+    static NativeFunction parse() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            Object text = arguments.get(0);
+            if (!LoxString.isString(text)) {
+                throw NativeFunction.error("Argument must be a string.");
+            }
+            return JsonReader.parse((CharSequence)text);
+        });
+    }
+
+    static NativeFunction stringify() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            StringBuilder out = new StringBuilder();
+            write(out, arguments.get(0), 0);
+            return out.toString();
+        });
+    }
+
+    // Paths are relative to the running script.
+    static NativeFunction reader() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            Object path = arguments.get(0);
+            if (!LoxString.isString(path)) {
+                throw NativeFunction.error("Argument must be a string.");
+            }
+            try {
+                return new JsonReader(new InputStreamReader(Files.newInputStream(
+                    interpreter.directory.resolve(path.toString())),
+                    StandardCharsets.UTF_8), path.toString());
+            } catch (IOException error) {
+                throw NativeFunction.error("Can't open '" + path + "'.");
+            }
+        });
+    }
+
+    // Instances write their fields, and JsonObjects their other keys too,
+    // Maps their entries with the keys as strings, and Lists, Sets and
+    // DoubleArrays their elements. Numbers JSON can't spell, NaN and the
+    // infinities, become null.
+    private static void write(StringBuilder out, Object value, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw NativeFunction.error("Value nests too deeply, or contains itself.");
+        }
+
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append((boolean)value);
+        } else if (value instanceof Double) {
+            double number = (double)value;
+            out.append(Double.isFinite(number) ? Interpreter.stringify(number)
+                                               : "null");
+        } else if (LoxString.isString(value)) {
+            writeString(out, (CharSequence)value);
+        } else if (value instanceof LoxList) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : ((LoxList)value).items) {
+                if (!first) out.append(',');
+                first = false;
+                write(out, item, depth + 1);
+            }
+            out.append(']');
+        } else if (value instanceof DoubleArray) {
+            DoubleArray array = (DoubleArray)value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) out.append(',');
+                write(out, array.data[array.offset + i], depth + 1);
+            }
+            out.append(']');
+        } else if (value instanceof LoxSet) {
+            HashTable table = ((LoxSet)value).table;
+            out.append('[');
+            int first = table.next(-1);
+            for (int slot = first; slot >= 0; slot = table.next(slot)) {
+                if (slot != first) out.append(',');
+                write(out, table.key(slot), depth + 1);
+            }
+            out.append(']');
+        } else if (value instanceof LoxMap) {
+            HashTable table = ((LoxMap)value).table;
+            out.append('{');
+            int first = table.next(-1);
+            for (int slot = first; slot >= 0; slot = table.next(slot)) {
+                if (slot != first) out.append(',');
+                writeString(out, Interpreter.stringify(table.key(slot)));
+                out.append(':');
+                write(out, table.value(slot), depth + 1);
+            }
+            out.append('}');
+        } else if (value instanceof LoxInstance) {
+            SymbolMap<Object> fields = ((LoxInstance)value).fields;
+            out.append('{');
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) out.append(',');
+                writeString(out, Symbols.name(fields.symbol(i)));
+                out.append(':');
+                write(out, fields.value(i), depth + 1);
+            }
+            if (value instanceof JsonObject) {
+                boolean first = fields.size() == 0;
+                for (Map.Entry<String, Object> other :
+                         ((JsonObject)value).others.entrySet()) {
+                    if (!first) out.append(',');
+                    first = false;
+                    writeString(out, other.getKey());
+                    out.append(':');
+                    write(out, other.getValue(), depth + 1);
+                }
+            }
+            out.append('}');
+        } else {
+            throw NativeFunction.error("Can't convert " +
+                Interpreter.stringify(value) + " to JSON.");
+        }
+    }
+
+    private static void writeString(StringBuilder out, CharSequence text) {
+        out.append('"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// An object parsed from JSON, an instance of the class Object. If all its
+// keys are already symbols, such as the names the program uses, they're
+// fields like any instance's. Otherwise, with data such as ids or keys
+// that aren't identifiers, they're all kept by name, in order, so parsing
+// them doesn't make symbols that last as long as the process. Property
+// access reads either kind; get(key) and has(key) reach any key by its
+// string.
+class JsonObject extends LoxInstance {
+    private static final NativeMethods<JsonObject> methods =
+        new NativeMethods<>();
+
+    static {
+        methods.define("get", 1, (interpreter, object, arguments) ->
+            object.get(key(arguments.get(0))));
+        methods.define("has", 1, (interpreter, object, arguments) ->
+            object.has(key(arguments.get(0))));
+    }
+
+    // Every key, in the order they were parsed, once one isn't a symbol.
+    final Map<String, Object> others = new LinkedHashMap<>();
+
+    JsonObject() {
+        super(JsonReader.OBJECT);
+    }
+
+    @Override
+    public Object get(Token name) {
+        if (fields.containsKey(name.symbol)) return fields.get(name.symbol);
+        if (others.containsKey(name.lexeme)) return others.get(name.lexeme);
+        return methods.bind(this, name);
+    }
+
+    @Override
+    void set(Token name, Object value) {
+        if (others.isEmpty() || fields.containsKey(name.symbol)) {
+            fields.put(name.symbol, value);
+        } else {
+            others.put(name.lexeme, value);
+        }
+    }
+
+    void moveFields() {
+        for (int i = 0; i < fields.size(); i++) {
+            others.put(Symbols.name(fields.symbol(i)), fields.value(i));
+        }
+        fields.clear();
+    }
+
+    Object get(String key) {
+        int symbol = Symbols.lookup(key, 0, key.length());
+        if (symbol >= 0 && fields.containsKey(symbol)) return fields.get(symbol);
+        return others.get(key);
+    }
+
+    boolean has(String key) {
+        int symbol = Symbols.lookup(key, 0, key.length());
+        return (symbol >= 0 && fields.containsKey(symbol)) ||
+            others.containsKey(key);
+    }
+
+    // Every key as a field, for a snapshot, which is written once.
+    SymbolMap<Object> allFields() {
+        SymbolMap<Object> all = new SymbolMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            all.put(fields.symbol(i), fields.value(i));
+        }
+        for (Map.Entry<String, Object> other : others.entrySet()) {
+            all.put(Symbols.intern(other.getKey()), other.getValue());
+        }
+        return all;
+    }
+
+    private static String key(Object key) {
+        if (!LoxString.isString(key)) {
+            throw NativeFunction.error("Key must be a string.");
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Parses JSON into Lox values: objects become JsonObjects, instances of
+// the class Object with a property per key, arrays become Lists, and null
+// becomes nil. Keys are looked up as symbols straight from the buffer, but
+// never interned, since symbols live as long as the process; the others
+// are shared through the reader's own table, so a key repeated across a
+// million records is still stored once.
+//
+// Input is read through a fixed buffer, which only grows to fit the longest
+// single string or number. A stream reads one top-level value at a time:
+// the elements of an array, or a sequence of values such as JSON Lines.
+// jsonReader(path) opens one, with methods hasNext(), next() and close().
+class JsonReader implements NativeObject {
+    static final LoxClass OBJECT = new LoxClass("Object", null,
+        new SymbolMap<>());
+
+    private static final NativeMethods<JsonReader> methods =
+        new NativeMethods<>();
+
+    static {
+        methods.define("hasNext", 0, (interpreter, json, arguments) ->
+            json.hasNext());
+        methods.define("next", 0, (interpreter, json, arguments) ->
+            json.next());
+        methods.define("close", 0, (interpreter, json, arguments) -> {
+            json.close();
+            return null;
+        });
+    }
+
+    private static final int MAX_DEPTH = 512;
+    // Key strings shared per reader; beyond this many, new ones aren't.
+    private static final int MAX_KEYS = 4096;
+
+    private final Reader reader;
+    // What the reader reads, for errors.
+    private final String name;
+    private char[] buffer;
+    // The same chars, to intern keys from without copying them.
+    private CharBuffer chars;
+    private int position = 0;
+    private int limit;
+    private int line = 1;
+    private final StringBuilder escaped = new StringBuilder();
+    // The last key, when it wasn't a symbol.
+    private String otherKey;
+    private final Map<String, String> keys = new HashMap<>();
+
+    // Whether the stream is the elements of a top-level array.
+    private boolean inArray = false;
+    private boolean started = false;
+    private boolean closed = false;
+
+    JsonReader(Reader reader, String name) {
+        this.reader = reader;
+        this.name = name;
+        buffer = new char[1 << 16];
+        chars = CharBuffer.wrap(buffer);
+        limit = 0;
+    }
+
+    // Parses text that holds exactly one value.
+    JsonReader(CharSequence text) {
+        reader = null;
+        name = null;
+        buffer = text.toString().toCharArray();
+        chars = CharBuffer.wrap(buffer);
+        limit = buffer.length;
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    static Object parse(CharSequence text) {
+        JsonReader json = new JsonReader(text);
+        Object value = json.value(0);
+        if (json.peek() >= 0) throw json.error("Unexpected text after the value.");
+        return value;
+    }
+
+    // Whether the stream has another top-level value. Closes it at the end.
+    boolean hasNext() {
+        if (!started) {
+            started = true;
+            if (peek() == '[') {
+                position++;
+                inArray = true;
+                if (peek() == ']') {
+                    position++;
+                    inArray = false;
+                }
+            }
+        }
+        if (inArray) return true;
+        if (peek() >= 0) return true;
+        close();
+        return false;
+    }
+
+    Object next() {
+        if (!hasNext()) throw NativeFunction.error("No more JSON values.");
+        Object value = value(0);
+        if (inArray) {
+            int c = peek();
+            position++;
+            if (c == ']') {
+                inArray = false;
+                if (peek() >= 0) throw error("Unexpected text after the array.");
+            } else if (c != ',') {
+                throw error("Expected ',' or ']' after an array element.");
+            }
+        }
+        return value;
+    }
+
+    void close() {
+        if (reader == null || closed) return;
+        closed = true;
+        try {
+            reader.close();
+        } catch (IOException error) {
+            throw NativeFunction.error("Can't read '" + name + "'.");
+        }
+    }
+
+    private Object value(int depth) {
+        if (depth > MAX_DEPTH) throw error("Values nest too deeply.");
+        int c = peek();
+        switch (c) {
+            case '{': return object(depth);
+            case '[': return array(depth);
+            case '"': return string();
+            case 't': return literal("true", true);
+            case 'f': return literal("false", false);
+            case 'n': return literal("null", null);
+            case -1: throw error("Expected a value but the input ended.");
+            default:
+                if (c == '-' || isDigit(c)) return number();
+                throw error("Unexpected character '" + (char)c + "'.");
+        }
+    }
+
+    private JsonObject object(int depth) {
+        position++;
+        JsonObject object = new JsonObject();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+
+        boolean byName = false;
+        while (true) {
+            if (peek() != '"') throw error("Expected a string key.");
+            int key = key();
+            String name = otherKey;
+            if (peek() != ':') throw error("Expected ':' after a key.");
+            position++;
+            Object value = value(depth + 1);
+            if (key < 0 && !byName) {
+                object.moveFields();
+                byName = true;
+            }
+            if (byName) {
+                object.others.put(key < 0 ? name : Symbols.name(key), value);
+            } else {
+                object.fields.put(key, value);
+            }
+
+            int c = peek();
+            position++;
+            if (c == '}') return object;
+            if (c != ',') throw error("Expected ',' or '}' after a value.");
+        }
+    }
+
+    private LoxList array(int depth) {
+        position++;
+        List<Object> items = new ArrayList<>();
+        if (peek() == ']') {
+            position++;
+            return new LoxList(items);
+        }
+
+        while (true) {
+            items.add(value(depth + 1));
+            int c = peek();
+            position++;
+            if (c == ']') return new LoxList(items);
+            if (c != ',') throw error("Expected ',' or ']' after an element.");
+        }
+    }
+
+    private String string() {
+        int end = scanString();
+        if (end < 0) return escaped.toString();
+        String text = new String(buffer, position, end - position);
+        position = end + 1;
+        return text;
+    }
+
+    // The key's symbol, or -1 with the key in otherKey if it isn't one.
+    private int key() {
+        int end = scanString();
+        CharSequence text = end < 0 ? escaped : chars;
+        int start = end < 0 ? 0 : position;
+        if (end < 0) end = escaped.length();
+        else position = end + 1;
+
+        int symbol = Symbols.lookup(text, start, end);
+        if (symbol >= 0) return symbol;
+        String key = text.subSequence(start, end).toString();
+        String shared = keys.get(key);
+        if (shared == null && keys.size() < MAX_KEYS) keys.put(key, key);
+        otherKey = shared != null ? shared : key;
+        return -1;
+    }
+
+    // Scans a string starting at its opening quote. If it has no escapes,
+    // leaves position at its first character and returns the index of the
+    // closing quote; the caller moves past it. Otherwise decodes it into
+    // escaped, moves past it, and returns -1.
+    private int scanString() {
+        position++;
+        int start = position;
+        int i = start;
+        boolean hasEscapes = false;
+        while (true) {
+            if (i == limit) {
+                if (hasEscapes) {
+                    escaped.append(buffer, start, i - start);
+                    start = i;
+                }
+                i -= start;
+                if (!more(start)) throw error("Unterminated string.");
+                start = 0;
+                continue;
+            }
+
+            char c = buffer[i];
+            if (c == '"') {
+                if (!hasEscapes) {
+                    position = start;
+                    return i;
+                }
+                escaped.append(buffer, start, i - start);
+                position = i + 1;
+                return -1;
+            }
+            if (c < 0x20) throw error("Control character in string.");
+            if (c != '\\') {
+                i++;
+                continue;
+            }
+
+            if (!hasEscapes) {
+                hasEscapes = true;
+                escaped.setLength(0);
+            }
+            escaped.append(buffer, start, i - start);
+            position = i;
+            require(2);
+            i = position;
+            switch (i + 1 < limit ? buffer[i + 1] : -1) {
+                case '"': escaped.append('"'); break;
+                case '\\': escaped.append('\\'); break;
+                case '/': escaped.append('/'); break;
+                case 'b': escaped.append('\b'); break;
+                case 'f': escaped.append('\f'); break;
+                case 'n': escaped.append('\n'); break;
+                case 'r': escaped.append('\r'); break;
+                case 't': escaped.append('\t'); break;
+                case 'u': {
+                    require(6);
+                    i = position;
+                    int code = 0;
+                    for (int j = i + 2; j < i + 6; j++) {
+                        int digit = j < limit ? Character.digit(buffer[j], 16) : -1;
+                        if (digit < 0) throw error("Invalid \\u escape.");
+                        code = code * 16 + digit;
+                    }
+                    escaped.append((char)code);
+                    i += 4;
+                    break;
+                }
+                default: throw error("Invalid escape.");
+            }
+            i += 2;
+            start = i;
+        }
+    }
+
+    private Object number() {
+        int start = position;
+        int i = start;
+        while (true) {
+            if (i == limit) {
+                i -= start;
+                boolean more = more(start);
+                start = 0;
+                if (!more) break;
+                continue;
+            }
+            char c = buffer[i];
+            if (!isDigit(c) && c != '-' && c != '+' && c != '.' &&
+                c != 'e' && c != 'E') {
+                break;
+            }
+            i++;
+        }
+
+        CharSequence text = chars.subSequence(start, i);
+        if (!isNumber(text)) throw error("Invalid number '" + text + "'.");
+        position = i;
+        return StringMethods.parse(text);
+    }
+
+    // JSON is stricter than parseNumber: no '+', leading zeros, or bare
+    // decimal points.
+    private static boolean isNumber(CharSequence text) {
+        int i = 0;
+        int length = text.length();
+        if (i < length && text.charAt(i) == '-') i++;
+        if (i == length) return false;
+        if (text.charAt(i) == '0') {
+            i++;
+        } else {
+            if (!isDigit(text.charAt(i))) return false;
+            while (i < length && isDigit(text.charAt(i))) i++;
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            int digits = i;
+            while (i < length && isDigit(text.charAt(i))) i++;
+            if (i == digits) return false;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) i++;
+            int digits = i;
+            while (i < length && isDigit(text.charAt(i))) i++;
+            if (i == digits) return false;
+        }
+        return i == length;
+    }
+
+    private Object literal(String word, Object value) {
+        require(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            if (position + i >= limit || buffer[position + i] != word.charAt(i)) {
+                throw error("Expected '" + word + "'.");
+            }
+        }
+        position += word.length();
+        return value;
+    }
+
+    // Skips whitespace and returns the next character without consuming
+    // it, or -1 at the end.
+    private int peek() {
+        while (true) {
+            if (position == limit && !more(position)) return -1;
+            char c = buffer[position];
+            if (c == '\n') {
+                line++;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    // Makes at least count characters available from position, unless the
+    // input ends first.
+    private void require(int count) {
+        while (limit - position < count && more(position)) {}
+    }
+
+    // Reads more input, keeping buffer[from, limit), which moves to the
+    // start of the buffer along with position. Returns false at the end.
+    private boolean more(int from) {
+        int kept = limit - from;
+        if (reader != null && kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            chars = CharBuffer.wrap(buffer);
+        }
+        System.arraycopy(buffer, from, buffer, 0, kept);
+        position -= from;
+        limit = kept;
+        if (reader == null || closed) return false;
+
+        try {
+            int count = reader.read(buffer, limit, buffer.length - limit);
+            if (count < 0) return false;
+            limit += count;
+            return true;
+        } catch (IOException error) {
+            throw NativeFunction.error("Can't read '" + name + "'.");
+        }
+    }
+
+    private RuntimeError error(String message) {
+        return NativeFunction.error("Invalid JSON on line " + line + ": " +
+            message);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Runs a script over the lines of its input, like awk: begin() first, then
+// lines(batch) with a List of up to BATCH lines at a time if the script
+// defines it, or else line(text) for each line, and end() last. Each
+// function is optional. Line ends, \n or \r\n, aren't part of the text.
+//
+// Input is read in large blocks and decoded as UTF-8 once per block. Lines
+// are StringSlices of the block, so a script that only looks at a line
+// never makes a String of it.
+class LineRunner {
+    private static final int BLOCK = 1 << 20;
+    private static final int BATCH = 1024;
+
+    private final Interpreter interpreter;
+    private final LoxCallable line;
+    private final LoxCallable lines;
+    private List<Object> batch = new ArrayList<>();
+    private final List<Object> arguments = new ArrayList<>(1);
+
+    private LineRunner(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.line = function("line", 1);
+        this.lines = function("lines", 1);
+    }
+
+    // Throws IllegalArgumentException if the script defines one of the
+    // functions with the wrong number of parameters.
+    static void run(Interpreter interpreter,
+                    ReadableByteChannel input) throws IOException {
+        LineRunner runner = new LineRunner(interpreter);
+        LoxCallable begin = runner.function("begin", 0);
+        LoxCallable end = runner.function("end", 0);
+        interpreter.enter();
+        try {
+            if (begin != null) begin.call(interpreter, new ArrayList<>());
+            if (runner.line != null || runner.lines != null) runner.read(input);
+            if (end != null) end.call(interpreter, new ArrayList<>());
+        } catch (RuntimeError error) {
+            interpreter.diagnostics.runtimeError(error);
+        } finally {
+            interpreter.leave();
+        }
+    }
+
+    private LoxCallable function(String name, int arity) {
+        Object value = interpreter.globals.values.get(Symbols.intern(name));
+        if (value == null) return null;
+        if (!(value instanceof LoxCallable) ||
+            ((LoxCallable)value).arity() != arity) {
+            throw new IllegalArgumentException("'" + name +
+                "' must be a function taking " + arity + " arguments.");
+        }
+        return (LoxCallable)value;
+    }
+
+    private void read(ReadableByteChannel input) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+        boolean atEnd = false;
+        while (!atEnd) {
+            atEnd = input.read(buffer) < 0;
+
+            byte[] bytes = buffer.array();
+            int length = buffer.position();
+            // Only decode whole lines; the rest waits for the next block.
+            int complete = length;
+            if (!atEnd) {
+                while (complete > 0 && bytes[complete - 1] != '\n') complete--;
+                if (complete == 0) {
+                    if (!buffer.hasRemaining()) {
+                        // A line longer than the buffer.
+                        buffer = ByteBuffer.wrap(
+                            Arrays.copyOf(bytes, bytes.length * 2)).position(length);
+                    }
+                    continue;
+                }
+            }
+
+            deliver(new String(bytes, 0, complete, StandardCharsets.UTF_8));
+            buffer.flip().position(complete);
+            buffer.compact();
+        }
+    }
+
+    private void deliver(String block) {
+        int start = 0;
+        while (start < block.length()) {
+            int newline = block.indexOf('\n', start);
+            int next = newline < 0 ? block.length() : newline + 1;
+            int end = newline < 0 ? block.length() : newline;
+            if (end > start && block.charAt(end - 1) == '\r') end--;
+
+            StringSlice text = StringSlice.view(block, start, end);
+            if (lines != null) {
+                batch.add(text);
+                if (batch.size() == BATCH) flushBatch();
+            } else {
+                arguments.clear();
+                arguments.add(text);
+                line.call(interpreter, arguments);
+            }
+            start = next;
+        }
+        // Don't hold lines back waiting for more input.
+        if (!batch.isEmpty()) flushBatch();
+    }
+
+    private void flushBatch() {
+        // A fresh list each time, since the script may keep the last one.
+        LoxList list = new LoxList(batch);
+        batch = new ArrayList<>(BATCH);
+        arguments.clear();
+        arguments.add(list);
+        lines.call(interpreter, arguments);
+    }
+}
@@ -1,41 +1,169 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
+    static final String VERSION = "1.0";
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
+    // Prints errors as they are found.
+    static final Diagnostics diagnostics = new Diagnostics() {
+        @Override
+        void report(Entry error) {
+            OutputSink.stdout.flush();
+            System.err.println(error);
+            hadError = true;
+        }
+
+        @Override
+        void runtimeError(RuntimeError error) {
+            OutputSink.stdout.flush();
+            System.err.println(describe(error));
+            hadRuntimeError = true;
+        }
+    };
+
+    // After diagnostics, which it reports to.
+    private static final Interpreter interpreter = new Interpreter();
+
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        // -Dlox.fuel=steps and -Dlox.memory=bytes limit each run.
+        long fuel = Long.getLong("lox.fuel", 0);
+        long memory = Long.getLong("lox.memory", 0);
+        if (fuel > 0 || memory > 0) {
+            interpreter.budget = new Budget(
+                fuel > 0 ? fuel : Budget.UNLIMITED,
+                memory > 0 ? memory : Budget.UNLIMITED, Budget.SLICE, null);
+        }
+
+        if (args.length == 3 && args[0].equals("--snapshot")) {
+            snapshot(args[1], args[2]);
+            return;
+        }
+
+        if ((args.length == 1 || args.length == 2) && args[0].equals("--daemon")) {
+            LoxDaemon.serve(args.length == 2 ? Paths.get(args[1]) : LoxClient.socket());
+            return;
+        }
+
+        if (args.length == 3 && args[0].equals("--batch")) {
+            LoxBatch.run(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--lines")) {
+            runLines(args[1], args.length == 3 ? args[2] : null);
+            return;
+        }
+
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("--image")) {
+            try {
+                HeapImage.load(Paths.get(args[1]), interpreter);
+            } catch (IOException error) {
+                System.err.println("Can't read image " + args[1] + ".");
+                System.exit(66);
+            } catch (IllegalArgumentException error) {
+                System.err.println(error.getMessage());
+                System.exit(65);
+            }
+            first = 2;
+        }
+
+        if (args.length - first > 1) {
+            System.out.println("Usage: jlox [--image image] [script]");
+            System.out.println("       jlox --snapshot prelude image");
+            System.out.println("       jlox --lines script [input]");
+            System.out.println("       jlox --daemon [socket]");
+            System.out.println("       jlox --batch scripts results");
             System.exit(64); 
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        } else if (args.length - first == 1) {
+            runFile(args[first]);
         } else {
             runPrompt();
         }
     }
 
+    // Runs a prelude and writes the resulting globals to an image that
+    // later runs can start from with --image.
+    private static void snapshot(String prelude, String image) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(prelude));
+        List<Stmt> statements = compile(new String(bytes, Charset.defaultCharset()));
+        if (hadError) System.exit(65);
+
+        interpreter.interpret(statements);
+        if (hadRuntimeError) System.exit(70);
+
+        try {
+            HeapImage.write(Paths.get(image), statements, interpreter);
+        } catch (IllegalArgumentException error) {
+            System.err.println(error.getMessage());
+            System.exit(70);
+        }
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        interpreter.directory = Paths.get(path).toAbsolutePath().getParent();
+
+        ProgramCache cache = ProgramCache.open();
+        if (cache == null) {
+            run(new String(bytes, Charset.defaultCharset()));
+        } else {
+            byte[] key = ProgramCache.hash(bytes);
+            List<Stmt> statements = cache.load(key, interpreter);
+            if (statements != null) {
+                ModuleLoader.prefetch(interpreter.directory, statements);
+                ModuleLoader.await(interpreter.directory, statements, diagnostics);
+                if (!hadError) interpreter.interpret(statements);
+            } else {
+                run(new String(bytes, Charset.defaultCharset()), cache, key);
+            }
+        }
     
         // Indicate an error in the exit code.
         if (hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
+    // Runs the script, then its begin, line or lines, and end functions
+    // over the input file or standard input.
+    private static void runLines(String script, String input) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(script));
+        interpreter.directory = Paths.get(script).toAbsolutePath().getParent();
+        List<Stmt> statements = compile(new String(bytes, Charset.defaultCharset()));
+        if (hadError) System.exit(65);
+
+        interpreter.interpret(statements);
+        if (hadRuntimeError) System.exit(70);
+
+        try (ReadableByteChannel channel = input == null ?
+                Channels.newChannel(System.in) :
+                FileChannel.open(Paths.get(input), StandardOpenOption.READ)) {
+            LineRunner.run(interpreter, channel);
+        } catch (IllegalArgumentException error) {
+            System.err.println(error.getMessage());
+            System.exit(65);
+        }
+        if (hadRuntimeError) System.exit(70);
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
 
         for (;;) { 
+            // What the last line printed comes before the next prompt.
+            interpreter.output.flush();
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
@@ -44,7 +172,8 @@ public class Lox {
         }
     }
 
-    private static boolean isExpression(List<Token> tokens) {
+    // Whether a script is a lone expression, whose value is printed.
+    static boolean isExpression(List<Token> tokens) {
         if (tokens.size() < 2) {
             return false;
         }
@@ -60,7 +189,11 @@ public class Lox {
 
 
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
+        run(source, null, null);
+    }
+
+    private static void run(String source, ProgramCache cache, byte[] key) {
+        Scanner scanner = new FastScanner(source);
         List<Token> tokens = scanner.scanTokens();
         Parser parser = new Parser(tokens);   
 
@@ -77,42 +210,31 @@ public class Lox {
 
             interpreter.interpret(expr);
         } else {
-            List<Stmt> statements = parser.parse();
-
-            // Stop if there was a syntax error.
-            if (hadError) return;
-
-            Resolver resolver = new Resolver(interpreter);
-            resolver.resolve(statements);
-
+            List<Stmt> statements = compile(parser);
             if (hadError) return;
 
+            if (cache != null) cache.store(key, statements, interpreter);
             interpreter.interpret(statements);    
         }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static List<Stmt> compile(String source) {
+        Scanner scanner = new FastScanner(source);
+        return compile(new Parser(scanner.scanTokens()));
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.Eof) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
-    }
+    private static List<Stmt> compile(Parser parser) {
+        List<Stmt> statements = parser.parse();
 
-    private static void report(int line, String where,
-                               String message) {
-        System.err.println(
-            "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
+        // Stop if there was a syntax error.
+        if (hadError) return statements;
+
+        // Imports compile in the background while we resolve.
+        ModuleLoader.prefetch(interpreter.directory, statements);
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-            "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+        Resolver resolver = new Resolver(interpreter);
+        resolver.resolve(statements);
+        ModuleLoader.await(interpreter.directory, statements, diagnostics);
+        return statements;
     }
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Runs many scripts in one JVM, each in an Isolate of its own, on a pool
+// of lox.batchThreads threads, a thread per core by default:
+//   java Lox --batch scripts results
+// scripts is a directory, whose .lox files are run, those in its
+// subdirectories too, or a manifest listing a script per line, relative
+// to the manifest's directory. Each script's output goes to
+// results/<script>.out, and its errors, if any, to results/<script>.err.
+// results/summary.tsv has a line per script of its exit code, the one
+// the command line would have exited with, and milliseconds taken. The
+// run ends by printing the throughput, the slowest scripts and the ones
+// that failed, and exits with 1 if any did.
+//
+// Scripts with the same source, in the same directory, are compiled
+// once. -Dlox.fuel and -Dlox.memory limit each script's run.
+class LoxBatch {
+    private static final int SLOWEST = 10;
+    private static final int FAILED = 10;
+
+    // A compiled program for the scripts that share a source, dropped
+    // once the last of them has it.
+    private static class Shared {
+        private final Path directory;
+        private CompiledProgram program;
+        private int left = 0;
+
+        Shared(Path directory) {
+            this.directory = directory;
+        }
+
+        // The first caller compiles; the others wait for it.
+        synchronized CompiledProgram take(byte[] source) {
+            if (program == null) program = compile(source, directory);
+            CompiledProgram taken = program;
+            if (--left == 0) program = null;
+            return taken;
+        }
+    }
+
+    private static class Job {
+        final Path script;
+        final String name;
+        final Shared shared;
+
+        Job(Path script, String name, Shared shared) {
+            this.script = script;
+            this.name = name;
+            this.shared = shared;
+        }
+    }
+
+    private static class Result {
+        final String name;
+        final int code;
+        final long nanos;
+
+        Result(String name, int code, long nanos) {
+            this.name = name;
+            this.code = code;
+            this.nanos = nanos;
+        }
+    }
+
+    static void run(Path scripts, Path results) throws IOException {
+        long start = System.nanoTime();
+        List<Job> jobs = jobs(scripts);
+        Files.createDirectories(results);
+
+        int count = Math.max(1, Integer.getInteger("lox.batchThreads",
+            Runtime.getRuntime().availableProcessors()));
+        ExecutorService threads = Executors.newFixedThreadPool(count);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Job job : jobs) futures.add(threads.submit(() -> run(job, results)));
+
+        List<Result> done = new ArrayList<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    done.add(futures.get(i).get());
+                } catch (ExecutionException error) {
+                    // Its results couldn't be written; it counts as failed.
+                    System.err.println(jobs.get(i).name + ": " + error.getCause());
+                    done.add(new Result(jobs.get(i).name, 70, 0));
+                }
+            }
+        } catch (InterruptedException error) {
+            throw new IOException(error);
+        } finally {
+            threads.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Result> failed = new ArrayList<>();
+        try (BufferedWriter summary = Files.newBufferedWriter(
+                results.resolve("summary.tsv"), StandardCharsets.UTF_8)) {
+            for (Result result : done) {
+                summary.write(String.format("%s\t%d\t%.3f%n", result.name,
+                    result.code, result.nanos / 1e6));
+                if (result.code != 0) failed.add(result);
+            }
+        }
+
+        System.out.printf("%d scripts in %.2f s on %d threads, %.1f scripts/s, " +
+            "%d failed.%n", done.size(), seconds, count, done.size() / seconds,
+            failed.size());
+        List<Result> slowest = new ArrayList<>(done);
+        slowest.sort(Comparator.comparingLong((Result result) -> result.nanos)
+            .reversed());
+        if (!slowest.isEmpty()) System.out.println("Slowest:");
+        for (Result result : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+            System.out.printf("%10.3f ms  %s%n", result.nanos / 1e6, result.name);
+        }
+        if (!failed.isEmpty()) System.out.println("Failed:");
+        for (Result result : failed.subList(0, Math.min(FAILED, failed.size()))) {
+            System.out.printf("%10d     %s%n", result.code, result.name);
+        }
+        if (failed.size() > FAILED) {
+            System.out.println("and " + (failed.size() - FAILED) + " more.");
+        }
+        System.out.flush();
+        if (!failed.isEmpty()) System.exit(1);
+    }
+
+    // The scripts in order, grouped by source and directory. Each one is
+    // read here to hash it, and again to run it.
+    private static List<Job> jobs(Path scripts) throws IOException {
+        Path base;
+        List<Path> paths;
+        if (Files.isDirectory(scripts)) {
+            base = scripts.toAbsolutePath();
+            try (Stream<Path> walk = Files.walk(base)) {
+                paths = walk.filter(path -> path.toString().endsWith(".lox") &&
+                        Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        } else {
+            base = scripts.toAbsolutePath().getParent();
+            paths = new ArrayList<>();
+            for (String line : Files.readAllLines(scripts, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty()) paths.add(base.resolve(line).normalize());
+            }
+        }
+
+        Map<String, Shared> groups = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        for (Path path : paths) {
+            Path directory = path.getParent();
+            // One that can't be read fails when it's run.
+            String key = directory.toString();
+            try {
+                key += "\0" + Base64.getEncoder().encodeToString(
+                    ProgramCache.hash(Files.readAllBytes(path)));
+            } catch (IOException error) {
+                key += "\0" + path;
+            }
+            Shared shared = groups.computeIfAbsent(key, k -> new Shared(directory));
+            shared.left++;
+            jobs.add(new Job(path, name(base, path), shared));
+        }
+        return jobs;
+    }
+
+    // Where under the results a script's files go.
+    private static String name(Path base, Path path) {
+        Path name = base.relativize(path);
+        if (name.startsWith("..")) name = path.getRoot().relativize(path);
+        return name.toString();
+    }
+
+    private static Result run(Job job, Path results) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> errors = new ArrayList<>();
+        int code;
+        try {
+            byte[] source = Files.readAllBytes(job.script);
+            CompiledProgram program = job.shared.take(source);
+
+            Isolate isolate = new Isolate(out);
+            isolate.setDirectory(job.shared.directory);
+            isolate.setLimits(Long.getLong("lox.fuel", 0),
+                Long.getLong("lox.memory", 0), 0, null);
+            isolate.run(program);
+            errors = isolate.errors();
+            code = isolate.hadError() ? 65 : isolate.hadRuntimeError() ? 70 : 0;
+        } catch (IOException error) {
+            errors.add("Can't read " + error.getMessage() + ".");
+            code = 66;
+        } catch (RuntimeException | StackOverflowError error) {
+            // From compiling, since the isolate reports its run's; the
+            // rest of the batch goes on.
+            errors.add("Internal error: " + error);
+            code = 70;
+        }
+        long nanos = System.nanoTime() - start;
+
+        Path output = results.resolve(job.name + ".out");
+        Files.createDirectories(output.getParent());
+        Files.write(output, out.toByteArray());
+        if (!errors.isEmpty()) {
+            Files.write(results.resolve(job.name + ".err"), errors,
+                StandardCharsets.UTF_8);
+        }
+        return new Result(job.name, code, nanos);
+    }
+
+    // A script that's a lone expression prints its value, as on the
+    // command line, so it's compiled as a print statement.
+    private static CompiledProgram compile(byte[] bytes, Path directory) {
+        String source = new String(bytes, Charset.defaultCharset());
+        Diagnostics diagnostics = new Diagnostics();
+        List<Token> tokens = new FastScanner(source, diagnostics).scanTokens();
+        if (Lox.isExpression(tokens)) {
+            Token eof = tokens.get(tokens.size() - 1);
+            List<Token> statement = new ArrayList<>(tokens.size() + 2);
+            statement.add(new Token(TokenType.Print, "print", null,
+                tokens.get(0).line));
+            statement.addAll(tokens.subList(0, tokens.size() - 1));
+            statement.add(new Token(TokenType.Semicolon, ";", null, eof.line));
+            statement.add(eof);
+            tokens = statement;
+        }
+        return CompiledProgram.compile(tokens, directory, diagnostics);
+    }
+}
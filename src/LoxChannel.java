@@ -0,0 +1,97 @@
+import java.util.ArrayDeque;
+
+// A bounded queue between fibers, created with Channel(capacity). See
+// Fibers.
+class LoxChannel implements NativeObject {
+    private static final NativeMethods<LoxChannel> methods = new NativeMethods<>();
+
+    static {
+        methods.define("send", 1, (interpreter, channel, arguments) -> {
+            channel.send(arguments.get(0));
+            return null;
+        });
+        methods.define("receive", 0, (interpreter, channel, arguments) ->
+            channel.receive());
+        methods.define("close", 0, (interpreter, channel, arguments) -> {
+            channel.close();
+            return null;
+        });
+    }
+
+    private final Fibers fibers;
+    private final int capacity;
+    private final ArrayDeque<Object> values = new ArrayDeque<>();
+    private boolean closed = false;
+    // Fibers waiting to receive, select() included, and to send.
+    final ArrayDeque<Fibers.Waiter> receivers = new ArrayDeque<>();
+    private final ArrayDeque<Fibers.Waiter> senders = new ArrayDeque<>();
+
+    LoxChannel(Fibers fibers, int capacity) {
+        this.fibers = fibers;
+        this.capacity = capacity;
+    }
+
+    static NativeFunction constructor() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            double capacity = NativeFunction.number(arguments.get(0));
+            if (capacity < 1 || capacity != Math.floor(capacity) ||
+                capacity > Integer.MAX_VALUE) {
+                throw NativeFunction.error("Invalid capacity.");
+            }
+            return new LoxChannel(interpreter.fibers(), (int)capacity);
+        });
+    }
+
+    private void send(Object value) {
+        while (!closed && values.size() >= capacity) fibers.park(senders);
+        if (closed) throw NativeFunction.error("Send on a closed channel.");
+        values.addLast(value);
+        wakeOne(receivers);
+    }
+
+    private Object receive() {
+        while (!isReady()) fibers.park(receivers);
+        return take();
+    }
+
+    private void close() {
+        closed = true;
+        while (!receivers.isEmpty()) wakeOne(receivers);
+        while (!senders.isEmpty()) wakeOne(senders);
+    }
+
+    // Whether receiving wouldn't wait.
+    boolean isReady() {
+        return !values.isEmpty() || closed;
+    }
+
+    // The next value, or nil once closed and empty.
+    Object take() {
+        if (values.isEmpty()) return null;
+        Object value = values.pollFirst();
+        wakeOne(senders);
+        return value;
+    }
+
+    // Wakes another receiver when the one woken took from elsewhere.
+    void passOn() {
+        if (isReady()) wakeOne(receivers);
+    }
+
+    private void wakeOne(ArrayDeque<Fibers.Waiter> queue) {
+        Fibers.Waiter waiter = queue.pollFirst();
+        if (waiter == null) return;
+        waiter.wokenBy = this;
+        fibers.wake(waiter);
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "Channel";
+    }
+}
@@ -1,12 +1,11 @@
 import java.util.List;
-import java.util.Map;
 
 class LoxClass implements LoxCallable {
     final String name;
-    private final Map<String, LoxFunction> methods;
-    private final LoxClass superclass;
+    final SymbolMap<LoxFunction> methods;
+    final LoxClass superclass;
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, LoxClass superclass, SymbolMap<LoxFunction> methods) {
         this.name = name;
         this.methods = methods;
         this.superclass = superclass;
@@ -20,8 +19,9 @@ class LoxClass implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter,
                        List<Object> arguments) {
+        interpreter.allocate(null, Budget.INSTANCE);
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
+        LoxFunction initializer = findMethod(Symbols.INIT);
         if (initializer != null) {
             initializer.bind(instance).call(interpreter, arguments);
         }
@@ -30,15 +30,14 @@ class LoxClass implements LoxCallable {
   
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
+        LoxFunction initializer = findMethod(Symbols.INIT);
         if (initializer == null) return 0;
         return initializer.arity();
     }
 
-    LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
+    LoxFunction findMethod(int name) {
+        LoxFunction method = methods.get(name);
+        if (method != null) return method;
 
         if (superclass != null) {
             return superclass.findMethod(name);
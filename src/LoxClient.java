@@ -0,0 +1,181 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Runs a script in a LoxDaemon rather than a JVM of its own, taking the
+// same arguments as the command line does for a script:
+//   java LoxClient script
+//   java LoxClient --lines script [input]
+// Output, errors and the exit code are the daemon's run's. The socket is
+// lox.socket, or lox.sock in $XDG_RUNTIME_DIR, or else in ~/.lox, which
+// the daemon makes readable by its user alone. Either way the client only
+// talks to a socket owned by the user running it.
+//
+// It only uses java.base and the constants below, so it starts quickly.
+class LoxClient {
+    static final int MAGIC = 0x4c4f5844;
+    static final int FORMAT = 1;
+
+    // Request modes.
+    static final int RUN = 0;
+    static final int LINES = 1;
+
+    // Reply frames: a kind, then a length and bytes, or for EXIT the code.
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+    static final int EXIT = 3;
+
+    static Path socket() {
+        String path = System.getProperty("lox.socket");
+        if (path != null) return Paths.get(path);
+        String runtime = System.getenv("XDG_RUNTIME_DIR");
+        if (runtime != null && !runtime.isEmpty()) {
+            return Paths.get(runtime, "lox.sock");
+        }
+        return Paths.get(System.getProperty("user.home"), ".lox", "lox.sock");
+    }
+
+    // Someone else's socket could hand back any output and exit code.
+    static boolean ours(Path socket) throws IOException {
+        try {
+            return Files.getOwner(socket).getName()
+                .equals(System.getProperty("user.name"));
+        } catch (UnsupportedOperationException error) {
+            return true;
+        }
+    }
+
+    // Streams over a socket that can be read on one thread while it's
+    // written on another. The ones from Channels can't: both take the
+    // channel's blocking lock, so a write waits for a read to finish.
+    static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) return 0;
+                return channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+
+    static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte)b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        int mode;
+        String script;
+        String input = null;
+        if (args.length == 1 && !args[0].startsWith("--")) {
+            mode = RUN;
+            script = args[0];
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("--lines")) {
+            mode = LINES;
+            script = args[1];
+            if (args.length == 3) input = args[2];
+        } else {
+            System.out.println("Usage: LoxClient script");
+            System.out.println("       LoxClient --lines script [input]");
+            System.exit(64);
+            return;
+        }
+
+        SocketChannel channel;
+        try {
+            if (Files.exists(socket()) && !ours(socket())) {
+                System.err.println("Not connecting to " + socket() +
+                    ": it belongs to another user.");
+                System.exit(69);
+                return;
+            }
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket()));
+        } catch (IOException error) {
+            System.err.println("No Lox daemon at " + socket() + ": " +
+                error.getMessage());
+            System.exit(69);
+            return;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            output(channel)));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeByte(mode);
+        out.writeUTF(Paths.get(script).toAbsolutePath().toString());
+        out.writeBoolean(input != null);
+        if (input != null) out.writeUTF(Paths.get(input).toAbsolutePath().toString());
+        out.flush();
+
+        // Standard input goes along only for lines read from it, on its own
+        // thread, as frames of a length and bytes ending with an empty one.
+        if (mode == LINES && input == null) {
+            Thread pump = new Thread(() -> pump(System.in, out));
+            pump.setDaemon(true);
+            pump.start();
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            input(channel), 1 << 16));
+        byte[] buffer = new byte[1 << 16];
+        while (true) {
+            int kind = in.read();
+            if (kind < 0) {
+                System.err.println("The Lox daemon went away.");
+                System.exit(70);
+            }
+            if (kind == EXIT) {
+                System.out.flush();
+                System.exit(in.readInt());
+            }
+            int length = in.readInt();
+            if (buffer.length < length) buffer = new byte[length];
+            in.readFully(buffer, 0, length);
+            OutputStream target = kind == STDOUT ? System.out : System.err;
+            target.write(buffer, 0, length);
+            target.flush();
+        }
+    }
+
+    private static void pump(InputStream stdin, DataOutputStream out) {
+        byte[] buffer = new byte[1 << 16];
+        try {
+            int count;
+            while ((count = stdin.read(buffer)) > 0) {
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+                out.flush();
+            }
+            out.writeInt(0);
+            out.flush();
+        } catch (IOException error) {
+            // The run is over.
+        }
+    }
+}
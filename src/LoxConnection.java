@@ -0,0 +1,61 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+// An accepted connection, handed to the callbacks given to listen(). See
+// EventLoop.
+class LoxConnection implements NativeObject {
+    private static final NativeMethods<LoxConnection> methods =
+        new NativeMethods<>();
+
+    static {
+        methods.define("write", 1, (interpreter, connection, arguments) -> {
+            Object text = arguments.get(0);
+            if (!LoxString.isString(text)) {
+                throw NativeFunction.error("Argument must be a string.");
+            }
+            if (connection.closed || connection.closing) {
+                throw NativeFunction.error("Connection is closed.");
+            }
+            connection.server.events.write(connection, (CharSequence)text);
+            return null;
+        });
+        methods.define("close", 0, (interpreter, connection, arguments) -> {
+            if (connection.closed || connection.closing) return null;
+            connection.closing = true;
+            connection.server.events.flush(connection);
+            return null;
+        });
+        methods.define("id", 0, (interpreter, connection, arguments) ->
+            (double)connection.id);
+    }
+
+    final LoxServer server;
+    final SocketChannel channel;
+    final int id;
+    SelectionKey key;
+    // Buffers waiting to be written, in fill mode.
+    final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>(2);
+    // The start of a character the last read cut off.
+    byte[] partial;
+    // Close once the writes are done.
+    boolean closing = false;
+    boolean closed = false;
+
+    LoxConnection(LoxServer server, SocketChannel channel, int id) {
+        this.server = server;
+        this.channel = channel;
+        this.id = id;
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "Connection(" + id + ")";
+    }
+}
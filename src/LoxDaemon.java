@@ -0,0 +1,343 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs scripts for LoxClient in one long-lived JVM, so a short script
+// doesn't pay for starting one and warming it up:
+//   java Lox --daemon [socket]
+// listens on a Unix domain socket, LoxClient.socket() by default. Each
+// request runs on a thread of its own, in an interpreter of its own,
+// which prints, reports errors and exits with 65 or 70 the way the
+// command line does for the same script.
+//
+// Compiled programs are kept, up to lox.daemonCache of them, and used
+// again until their file changes, or a module changes, which may change
+// their errors.
+class LoxDaemon {
+    private static final int LIMIT =
+        Math.max(1, Integer.getInteger("lox.daemonCache", 256));
+
+    private static class Cached {
+        final FileTime modified;
+        final CompiledProgram program;
+
+        Cached(FileTime modified, CompiledProgram program) {
+            this.modified = modified;
+            this.program = program;
+        }
+    }
+
+    private static final Map<Path, Cached> programs =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Cached> eldest) {
+                return size() > LIMIT;
+            }
+        };
+
+    // Writes reply frames; stdout and stderr may come from different
+    // threads when the script runs fibers.
+    private static class Reply {
+        private final DataOutputStream out;
+
+        Reply(DataOutputStream out) {
+            this.out = out;
+        }
+
+        synchronized void frame(int kind, byte[] bytes, int offset, int length) {
+            try {
+                out.writeByte(kind);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+                out.flush();
+            } catch (IOException error) {
+                // The client is gone; the run goes on without it.
+            }
+        }
+
+        void error(String text) {
+            byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+            frame(LoxClient.STDERR, bytes, 0, bytes.length);
+        }
+
+        synchronized void exit(int code) throws IOException {
+            out.writeByte(LoxClient.EXIT);
+            out.writeInt(code);
+            out.flush();
+        }
+
+        OutputStream stdout() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] { (byte)b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    frame(LoxClient.STDOUT, bytes, offset, length);
+                }
+            };
+        }
+    }
+
+    private static void createPrivate(Path directory) throws IOException {
+        try {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException error) {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private static void setMode(Path path, String mode) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path,
+                PosixFilePermissions.fromString(mode));
+        } catch (UnsupportedOperationException error) {
+            // Not a POSIX file system; the directory is all there is.
+        }
+    }
+
+    static void serve(Path socket) throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        Path directory = socket.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            // Only its user can reach a socket in here, whatever its mode.
+            createPrivate(directory);
+        }
+        if (Files.exists(socket)) {
+            if (!LoxClient.ours(socket)) {
+                throw new IOException(socket + " belongs to another user.");
+            }
+            boolean listening;
+            try {
+                SocketChannel.open(address).close();
+                listening = true;
+            } catch (IOException error) {
+                listening = false;
+            }
+            if (listening) {
+                throw new IOException("A daemon is already listening on " +
+                    socket + ".");
+            }
+            // Left behind by one that's gone.
+            Files.deleteIfExists(socket);
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open(
+            StandardProtocolFamily.UNIX);
+        server.bind(address);
+        setMode(socket, "rw-------");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException error) {
+                // Nothing to do about it now.
+            }
+        }));
+        System.err.println("Lox daemon listening on " + socket + ".");
+
+        ExecutorService threads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "lox-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (true) {
+            SocketChannel client = server.accept();
+            threads.execute(() -> handle(client));
+        }
+    }
+
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                LoxClient.input(client)));
+            if (in.readInt() != LoxClient.MAGIC ||
+                in.readInt() != LoxClient.FORMAT) {
+                return;
+            }
+            int mode = in.readByte();
+            Path script = Paths.get(in.readUTF());
+            Path input = in.readBoolean() ? Paths.get(in.readUTF()) : null;
+
+            Reply reply = new Reply(new DataOutputStream(new BufferedOutputStream(
+                LoxClient.output(client), 1 << 16)));
+            reply.exit(run(mode, script, input, in, reply));
+        } catch (IOException error) {
+            // The client is gone.
+        }
+    }
+
+    // A Java exception from the interpreter ends the run as a runtime
+    // error would, rather than dropping the client.
+    private static int run(int mode, Path script, Path input,
+                           DataInputStream in, Reply reply) {
+        try {
+            return runScript(mode, script, input, in, reply);
+        } catch (RuntimeException | StackOverflowError error) {
+            reply.error("Internal error: " + error);
+            return 70;
+        }
+    }
+
+    private static int runScript(int mode, Path script, Path input,
+                                 DataInputStream in, Reply reply) {
+        OutputSink output = new OutputSink(reply.stdout(), "exit");
+        Diagnostics diagnostics = new Diagnostics() {
+            @Override
+            void report(Entry error) {
+                super.report(error);
+                output.flush();
+                reply.error(error.toString());
+            }
+
+            @Override
+            void runtimeError(RuntimeError error) {
+                super.runtimeError(error);
+                output.flush();
+                reply.error(describe(error));
+            }
+        };
+        Interpreter interpreter = new Interpreter(diagnostics);
+        interpreter.output = output;
+        interpreter.directory = script.getParent();
+
+        try {
+            CompiledProgram program = program(mode, script, interpreter);
+            if (program == null) return exitCode(diagnostics);
+
+            for (Diagnostics.Entry error : program.errors) diagnostics.report(error);
+            if (diagnostics.hadError()) return 65;
+            interpreter.interpret(program);
+            if (mode == LoxClient.LINES && !diagnostics.hadRuntimeError()) {
+                try (ReadableByteChannel channel = input != null
+                        ? FileChannel.open(input, StandardOpenOption.READ)
+                        : stdin(in)) {
+                    LineRunner.run(interpreter, channel);
+                } catch (IllegalArgumentException error) {
+                    output.flush();
+                    reply.error(error.getMessage());
+                    return 65;
+                }
+            }
+            return exitCode(diagnostics);
+        } catch (IOException error) {
+            output.flush();
+            reply.error("Can't read " + error.getMessage() + ".");
+            return 66;
+        } finally {
+            output.flush();
+        }
+    }
+
+    private static int exitCode(Diagnostics diagnostics) {
+        if (diagnostics.hadError()) return 65;
+        if (diagnostics.hadRuntimeError()) return 70;
+        return 0;
+    }
+
+    // The compiled script, from the cache if it hasn't changed. A script
+    // that's a lone expression is run here instead, and null returned.
+    private static CompiledProgram program(int mode, Path script,
+            Interpreter interpreter) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(script);
+        synchronized (programs) {
+            if (ModuleLoader.forgetChanged()) programs.clear();
+            Cached cached = programs.get(script);
+            if (cached != null && cached.modified.equals(modified)) {
+                return cached.program;
+            }
+        }
+
+        String source = new String(Files.readAllBytes(script),
+            Charset.defaultCharset());
+        Diagnostics compiling = new Diagnostics();
+        List<Token> tokens = new FastScanner(source, compiling).scanTokens();
+        if (mode == LoxClient.RUN && Lox.isExpression(tokens)) {
+            runExpression(tokens, compiling, interpreter);
+            return null;
+        }
+
+        CompiledProgram program = CompiledProgram.compile(tokens,
+            interpreter.directory, compiling);
+        synchronized (programs) {
+            programs.put(script, new Cached(modified, program));
+        }
+        return program;
+    }
+
+    private static void runExpression(List<Token> tokens, Diagnostics compiling,
+                                      Interpreter interpreter) {
+        Expr expr = new Parser(tokens, compiling).parseExpression();
+        if (!compiling.hadError()) {
+            new Resolver(interpreter.locals, compiling).resolve(expr);
+        }
+        for (Diagnostics.Entry error : compiling.errors) {
+            interpreter.diagnostics.report(error);
+        }
+        if (!compiling.hadError()) interpreter.interpret(expr);
+    }
+
+    // Standard input as the client sends it, in frames of a length and
+    // bytes, ending with an empty one.
+    private static ReadableByteChannel stdin(DataInputStream in) {
+        return new ReadableByteChannel() {
+            private byte[] buffer = new byte[0];
+            private int left = 0;
+            private boolean ended = false;
+            private boolean open = true;
+
+            @Override
+            public int read(ByteBuffer target) throws IOException {
+                if (ended) return -1;
+                if (left == 0) {
+                    left = in.readInt();
+                    if (left == 0) {
+                        ended = true;
+                        return -1;
+                    }
+                }
+                int count = Math.min(left, target.remaining());
+                if (buffer.length < count) buffer = new byte[count];
+                in.readFully(buffer, 0, count);
+                target.put(buffer, 0, count);
+                left -= count;
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+    }
+}
@@ -1,15 +1,27 @@
 import java.util.List;
+import java.util.Map;
 
 class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;  
-    private final boolean isInitializer;
+    final Stmt.Function declaration;
+    final Environment closure;  
+    final boolean isInitializer;
+    // The resolution of the code it was declared in.
+    final Map<Expr, Integer> locals;
+    // Null unless calls can be memoized.
+    final Memo memo;
 
     LoxFunction(Stmt.Function declaration, Environment closure, 
-        boolean isInitializer) {
+        boolean isInitializer, Map<Expr, Integer> locals) {
+        this(declaration, closure, isInitializer, locals, null);
+    }
+
+    LoxFunction(Stmt.Function declaration, Environment closure,
+        boolean isInitializer, Map<Expr, Integer> locals, Memo memo) {
         this.closure = closure;
         this.declaration = declaration;
         this.isInitializer = isInitializer;
+        this.locals = locals;
+        this.memo = memo;
     }
 
     @Override
@@ -20,28 +32,41 @@ class LoxFunction implements LoxCallable {
     @Override
     public Object call(Interpreter interpreter,
                        List<Object> arguments) {
+        if (memo == null || !memo.isEnabled()) return invoke(interpreter, arguments);
+
+        Object key = Memo.key(arguments);
+        if (key == null) return invoke(interpreter, arguments);
+        Object result = memo.get(key);
+        if (result != null) return Memo.unwrap(result);
+
+        result = invoke(interpreter, arguments);
+        memo.put(key, result);
+        return result;
+    }
+
+    private Object invoke(Interpreter interpreter, List<Object> arguments) {
         Environment environment = new Environment(closure);
         for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
+            environment.define(declaration.params.get(i),
                 arguments.get(i));
         }
   
         try {
-            interpreter.executeBlock(declaration.body, environment);
+            interpreter.executeBlock(declaration.body, environment, locals);
         } catch (Return returnValue) {
-            if (isInitializer) return closure.getAt(0, "this");
+            if (isInitializer) return closure.getAt(0, Symbols.THIS);
 
             return returnValue.value;
         }
         
-        if (isInitializer) return closure.getAt(0, "this");
+        if (isInitializer) return closure.getAt(0, Symbols.THIS);
         return null;
     }
 
     LoxFunction bind(LoxInstance instance) {
         Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        environment.values.put(Symbols.THIS, instance);
+        return new LoxFunction(declaration, environment, isInitializer, locals);
     }
 
     @Override
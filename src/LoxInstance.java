@@ -1,9 +1,6 @@
-import java.util.HashMap;
-import java.util.Map;
-
 class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final LoxClass klass;
+    final SymbolMap<Object> fields = new SymbolMap<>();
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
@@ -15,11 +12,11 @@ class LoxInstance {
     }
 
     public Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        if (fields.containsKey(name.symbol)) {
+            return fields.get(name.symbol);
         }
         
-        LoxFunction method = klass.findMethod(name.lexeme);
+        LoxFunction method = klass.findMethod(name.symbol);
         if (method != null) return method.bind(this);
 
         throw new RuntimeError(name, 
@@ -27,6 +24,6 @@ class LoxInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        fields.put(name.symbol, value);
     }
 }
\ No newline at end of file
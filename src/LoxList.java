@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A growable list of Lox values, created with List().
+class LoxList implements NativeObject {
+    private static final NativeMethods<LoxList> methods = new NativeMethods<>();
+
+    static {
+        methods.define("add", 1, (interpreter, list, arguments) -> {
+            interpreter.allocate(null, Budget.ENTRY);
+            list.items.add(arguments.get(0));
+            return null;
+        });
+        methods.define("get", 1, (interpreter, list, arguments) ->
+            list.items.get(list.index(arguments.get(0))));
+        methods.define("set", 2, (interpreter, list, arguments) -> {
+            Object value = arguments.get(1);
+            list.items.set(list.index(arguments.get(0)), value);
+            return value;
+        });
+        methods.define("length", 0, (interpreter, list, arguments) ->
+            (double)list.items.size());
+    }
+
+    final List<Object> items;
+
+    LoxList() {
+        this(new ArrayList<>());
+    }
+
+    LoxList(List<Object> items) {
+        this.items = items;
+    }
+
+    static NativeFunction constructor() {
+        return new NativeFunction(0, (interpreter, arguments) -> new LoxList());
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    private int index(Object value) {
+        double index = NativeFunction.number(value);
+        if (index < 0 || index >= items.size() || index != Math.floor(index)) {
+            throw NativeFunction.error("Index out of bounds.");
+        }
+        return (int)index;
+    }
+
+    @Override
+    public String toString() {
+        return "List(" + Interpreter.stringify(items.size()) + ")";
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+// A hash map from any Lox value to any other, created with Map(). Keys
+// match when == would say they are equal.
+//
+// Iterating hands out positions instead of entries: next(nil) is the first
+// position, next(position) the one after it, and nil marks the end.
+class LoxMap implements NativeObject {
+    private static final NativeMethods<LoxMap> methods = new NativeMethods<>();
+
+    static {
+        methods.define("get", 1, (interpreter, map, arguments) -> {
+            int slot = map.table.find(arguments.get(0));
+            return slot < 0 ? null : map.table.value(slot);
+        });
+        methods.define("set", 2, (interpreter, map, arguments) -> {
+            Object value = arguments.get(1);
+            int size = map.table.size();
+            map.table.setValue(map.table.insert(arguments.get(0)), value);
+            if (map.table.size() != size) interpreter.allocate(null, Budget.ENTRY);
+            return value;
+        });
+        methods.define("has", 1, (interpreter, map, arguments) ->
+            map.table.find(arguments.get(0)) >= 0);
+        methods.define("remove", 1, (interpreter, map, arguments) ->
+            map.table.remove(arguments.get(0)));
+        methods.define("size", 0, (interpreter, map, arguments) ->
+            (double)map.table.size());
+        methods.define("clear", 0, (interpreter, map, arguments) -> {
+            map.table.clear();
+            return null;
+        });
+        methods.define("next", 1, (interpreter, map, arguments) ->
+            next(map.table, arguments.get(0)));
+        methods.define("keyAt", 1, (interpreter, map, arguments) ->
+            map.table.key(position(map.table, arguments.get(0))));
+        methods.define("valueAt", 1, (interpreter, map, arguments) ->
+            map.table.value(position(map.table, arguments.get(0))));
+        methods.define("forEach", 1, (interpreter, map, arguments) -> {
+            LoxCallable function = callback(arguments.get(0), 2);
+            for (int slot = map.table.next(-1); slot >= 0;
+                 slot = map.table.next(slot)) {
+                function.call(interpreter, Arrays.asList(map.table.key(slot),
+                    map.table.value(slot)));
+            }
+            return null;
+        });
+    }
+
+    final HashTable table = new HashTable(true);
+
+    static NativeFunction constructor() {
+        return new NativeFunction(0, (interpreter, arguments) -> new LoxMap());
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    void put(Object key, Object value) {
+        table.setValue(table.insert(key), value);
+    }
+
+    static Object next(HashTable table, Object position) {
+        int slot = position == null ? -1 : (int)NativeFunction.number(position);
+        if (slot < -1) throw NativeFunction.error("Invalid position.");
+        slot = table.next(slot);
+        return slot < 0 ? null : (Object)(double)slot;
+    }
+
+    static int position(HashTable table, Object position) {
+        double slot = NativeFunction.number(position);
+        if (slot != Math.floor(slot) || !table.isOccupied((int)slot)) {
+            throw NativeFunction.error("Invalid position.");
+        }
+        return (int)slot;
+    }
+
+    static LoxCallable callback(Object value, int arity) {
+        if (!(value instanceof LoxCallable) ||
+            ((LoxCallable)value).arity() != arity) {
+            throw NativeFunction.error("Expected a function taking " + arity +
+                " arguments.");
+        }
+        return (LoxCallable)value;
+    }
+
+    @Override
+    public String toString() {
+        return "Map(" + Interpreter.stringify(table.size()) + ")";
+    }
+}
@@ -0,0 +1,23 @@
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+// A compiled module. Compilation results are shared by every interpreter
+// in the process; each interpreter runs the module itself.
+class LoxModule {
+    final Path path;
+    final List<Stmt> statements;
+    final Map<Expr, Integer> locals;
+    final String error;
+    // The compile errors, reported to each program that imports it.
+    final List<Diagnostics.Entry> errors;
+
+    LoxModule(Path path, List<Stmt> statements, Map<Expr, Integer> locals,
+              String error, List<Diagnostics.Entry> errors) {
+        this.path = path;
+        this.statements = statements;
+        this.locals = locals;
+        this.error = error;
+        this.errors = errors;
+    }
+}
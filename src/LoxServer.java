@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+
+// A listening socket, returned by listen(). See EventLoop.
+class LoxServer implements NativeObject {
+    private static final NativeMethods<LoxServer> methods = new NativeMethods<>();
+
+    static {
+        methods.define("port", 0, (interpreter, server, arguments) -> {
+            try {
+                return (double)((InetSocketAddress)server.channel.getLocalAddress())
+                    .getPort();
+            } catch (IOException error) {
+                throw NativeFunction.error("Server is closed.");
+            }
+        });
+        methods.define("close", 0, (interpreter, server, arguments) -> {
+            server.events.close(server);
+            return null;
+        });
+    }
+
+    final EventLoop events;
+    final ServerSocketChannel channel;
+    final LoxCallable onAccept;
+    final LoxCallable onRead;
+    final LoxCallable onClose;
+    SelectionKey key;
+    boolean closed = false;
+
+    LoxServer(EventLoop events, ServerSocketChannel channel, LoxCallable onAccept,
+              LoxCallable onRead, LoxCallable onClose) {
+        this.events = events;
+        this.channel = channel;
+        this.onAccept = onAccept;
+        this.onRead = onRead;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "Server";
+    }
+}
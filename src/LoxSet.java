@@ -0,0 +1,55 @@
+import java.util.Arrays;
+
+// A hash set of Lox values, created with Set(). It iterates by position
+// like LoxMap.
+class LoxSet implements NativeObject {
+    private static final NativeMethods<LoxSet> methods = new NativeMethods<>();
+
+    static {
+        methods.define("add", 1, (interpreter, set, arguments) -> {
+            int size = set.table.size();
+            set.table.insert(arguments.get(0));
+            if (set.table.size() == size) return false;
+            interpreter.allocate(null, Budget.ENTRY);
+            return true;
+        });
+        methods.define("has", 1, (interpreter, set, arguments) ->
+            set.table.find(arguments.get(0)) >= 0);
+        methods.define("remove", 1, (interpreter, set, arguments) ->
+            set.table.remove(arguments.get(0)));
+        methods.define("size", 0, (interpreter, set, arguments) ->
+            (double)set.table.size());
+        methods.define("clear", 0, (interpreter, set, arguments) -> {
+            set.table.clear();
+            return null;
+        });
+        methods.define("next", 1, (interpreter, set, arguments) ->
+            LoxMap.next(set.table, arguments.get(0)));
+        methods.define("keyAt", 1, (interpreter, set, arguments) ->
+            set.table.key(LoxMap.position(set.table, arguments.get(0))));
+        methods.define("forEach", 1, (interpreter, set, arguments) -> {
+            LoxCallable function = LoxMap.callback(arguments.get(0), 1);
+            for (int slot = set.table.next(-1); slot >= 0;
+                 slot = set.table.next(slot)) {
+                function.call(interpreter, Arrays.asList(set.table.key(slot)));
+            }
+            return null;
+        });
+    }
+
+    final HashTable table = new HashTable(false);
+
+    static NativeFunction constructor() {
+        return new NativeFunction(0, (interpreter, arguments) -> new LoxSet());
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "Set(" + Interpreter.stringify(table.size()) + ")";
+    }
+}
@@ -0,0 +1,49 @@
+// A Lox string that isn't a plain java.lang.String, like the result of a
+// concatenation or a slice. Lox strings are either kind; toString gives
+// the String, and equals and hashCode agree with it.
+abstract class LoxString implements CharSequence {
+    // Concatenations shorter than this are copied right away.
+    private static final int ROPE_THRESHOLD = 64;
+
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    // A rope's flattening is counted against budget, unless it's null.
+    static Object concat(CharSequence left, CharSequence right, Budget budget) {
+        if (left.length() + right.length() < ROPE_THRESHOLD) {
+            return left.toString().concat(right.toString());
+        }
+        return new Rope(left, right, budget);
+    }
+
+    // Plain Strings for anything that is stored for the long run, so it
+    // doesn't keep a rope's parts or a slice's parent alive.
+    static Object normalize(Object value) {
+        return value instanceof LoxString ? value.toString() : value;
+    }
+
+    // Compares characters without flattening slices into new Strings.
+    static boolean equal(CharSequence a, CharSequence b) {
+        if (a instanceof String) return ((String)a).contentEquals(b);
+        if (b instanceof String) return ((String)b).contentEquals(a);
+        if (a.length() != b.length()) return false;
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public abstract String toString();
+
+    @Override
+    public boolean equals(Object other) {
+        return isString(other) && equal(this, (CharSequence)other);
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,40 @@
+// A buffer for building strings piece by piece, created with
+// StringBuilder().
+class LoxStringBuilder implements NativeObject {
+    private static final NativeMethods<LoxStringBuilder> methods =
+        new NativeMethods<>();
+
+    static {
+        methods.define("append", 1, (interpreter, builder, arguments) -> {
+            String text = Interpreter.stringify(arguments.get(0));
+            interpreter.allocate(null, Budget.string(text.length()));
+            builder.buffer.append(text);
+            return builder;
+        });
+        methods.define("length", 0, (interpreter, builder, arguments) ->
+            (double)builder.buffer.length());
+        methods.define("clear", 0, (interpreter, builder, arguments) -> {
+            builder.buffer.setLength(0);
+            return null;
+        });
+        methods.define("toString", 0, (interpreter, builder, arguments) ->
+            builder.buffer.toString());
+    }
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    static NativeFunction constructor() {
+        return new NativeFunction(0, (interpreter, arguments) ->
+            new LoxStringBuilder());
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    @Override
+    public String toString() {
+        return "StringBuilder(" + Interpreter.stringify(buffer.length()) + ")";
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Remembers the results of a function Purity found can be memoized, keyed
+// by its arguments, and forgets the least recently used once it holds
+// more than its limit. Only calls whose arguments and result are values
+// that can't change, nil, booleans, numbers and strings, are remembered.
+//
+// Memoizing is on by default, up to lox.memoSize results per function;
+// -Dlox.memo=off turns it off until memoize(fn, entries) turns it on.
+// memoStats(fn) reports on the cache.
+class Memo {
+    private static final int DEFAULT_LIMIT =
+        Math.max(1, Integer.getInteger("lox.memoSize", 4096));
+    private static final boolean DEFAULT_ON =
+        !System.getProperty("lox.memo", "on").equals("off");
+
+    // Stands for the key of a call without arguments, and for nil results.
+    private static final Object NONE = new Object();
+
+    private boolean pure = true;
+    private int limit = DEFAULT_ON ? DEFAULT_LIMIT : 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private final LinkedHashMap<Object, Object> cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                if (size() <= limit) return false;
+                evictions++;
+                return true;
+            }
+        };
+
+    synchronized boolean isPure() {
+        return pure;
+    }
+
+    synchronized boolean isEnabled() {
+        return limit > 0;
+    }
+
+    // The key for a call with these arguments, or null if it can't be
+    // remembered.
+    static Object key(List<Object> arguments) {
+        switch (arguments.size()) {
+            case 0: return NONE;
+            case 1: return value(arguments.get(0));
+            default: {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = value(arguments.get(i));
+                    if (values[i] == null) return null;
+                }
+                return Arrays.asList(values);
+            }
+        }
+    }
+
+    // The remembered result for key, with NONE for nil, or null.
+    synchronized Object get(Object key) {
+        Object result = cache.get(key);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    synchronized void put(Object key, Object result) {
+        if (limit == 0) return;
+        result = value(result);
+        if (result != null) cache.put(key, result);
+    }
+
+    static Object unwrap(Object result) {
+        return result == NONE ? null : result;
+    }
+
+    // Whether value can't change: nil, a boolean, a number or a string.
+    static boolean isValue(Object value) {
+        return value(value) != null;
+    }
+
+    // value as a key or cached result, or null if it could change.
+    private static Object value(Object value) {
+        if (value == null) return NONE;
+        if (value instanceof Double || value instanceof Boolean) return value;
+        if (LoxString.isString(value)) return LoxString.normalize(value);
+        return null;
+    }
+
+    synchronized void setLimit(int limit) {
+        if (!pure && limit > 0) {
+            throw NativeFunction.error("Can't memoize a function with side effects.");
+        }
+        this.limit = limit;
+        while (cache.size() > limit) {
+            cache.remove(cache.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    // Called when a name the function depends on is bound to something
+    // else, after which its results can't be trusted.
+    synchronized void invalidate() {
+        pure = false;
+        limit = 0;
+        cache.clear();
+    }
+
+    // memoize(fn, entries) remembers up to entries results of fn; 0 turns
+    // memoizing off for it.
+    static NativeFunction memoize() {
+        return new NativeFunction(2, (interpreter, arguments) -> {
+            double entries = NativeFunction.number(arguments.get(1));
+            if (entries < 0 || entries != Math.floor(entries) ||
+                entries > Integer.MAX_VALUE) {
+                throw NativeFunction.error("Invalid number of entries.");
+            }
+            Memo memo = memo(arguments.get(0));
+            if (memo != null) {
+                memo.setLimit((int)entries);
+            } else if (entries > 0) {
+                throw NativeFunction.error("Can't memoize a function with side effects.");
+            }
+            return null;
+        });
+    }
+
+    // memoStats(fn) is a Map with the keys pure, enabled, size, limit,
+    // hits, misses and evictions.
+    static NativeFunction stats() {
+        return new NativeFunction(1, (interpreter, arguments) -> {
+            Memo memo = memo(arguments.get(0));
+            LoxMap stats = new LoxMap();
+            if (memo == null) {
+                stats.put("pure", false);
+                stats.put("enabled", false);
+                return stats;
+            }
+            synchronized (memo) {
+                stats.put("pure", memo.pure);
+                stats.put("enabled", memo.limit > 0);
+                stats.put("size", (double)memo.cache.size());
+                stats.put("limit", (double)memo.limit);
+                stats.put("hits", (double)memo.hits);
+                stats.put("misses", (double)memo.misses);
+                stats.put("evictions", (double)memo.evictions);
+            }
+            return stats;
+        });
+    }
+
+    private static Memo memo(Object function) {
+        if (!(function instanceof LoxCallable)) {
+            throw NativeFunction.error("Argument must be a function.");
+        }
+        if (!(function instanceof LoxFunction)) return null;
+        return ((LoxFunction)function).memo;
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Compiles each module once per process. A module's imports are submitted
+// to the common fork-join pool as soon as it has been parsed, so
+// independent modules are scanned, parsed and resolved in parallel.
+class ModuleLoader {
+    private static final Map<Path, ForkJoinTask<LoxModule>> modules =
+        new ConcurrentHashMap<>();
+    // When each module's file was last modified as it was read, for a
+    // long-lived process to notice edits.
+    private static final Map<Path, FileTime> stamps = new ConcurrentHashMap<>();
+    private static final FileTime MISSING = FileTime.fromMillis(Long.MIN_VALUE);
+
+    static Path resolve(Path directory, String name) {
+        return directory.resolve(name).toAbsolutePath().normalize();
+    }
+
+    // Starts compiling everything the given statements import.
+    static void prefetch(Path directory, List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Import) {
+                Token path = ((Stmt.Import)statement).path;
+                submit(resolve(directory, (String)path.literal));
+            }
+        }
+    }
+
+    // Waits until everything the given statements import, and everything
+    // those modules import in turn, has been compiled, and reports their
+    // compile errors to diagnostics, and an import of a module that can't
+    // be read as an error at the import.
+    static void await(Path directory, List<Stmt> statements,
+                      Diagnostics diagnostics) {
+        Set<Path> seen = new HashSet<>();
+        Deque<Import> pending = new ArrayDeque<>();
+        addImports(null, directory, statements, pending);
+        while (!pending.isEmpty()) {
+            Import next = pending.removeFirst();
+            if (!seen.add(next.path)) continue;
+
+            LoxModule module = load(next.path);
+            if (module.errors != null) {
+                for (Diagnostics.Entry error : module.errors) {
+                    diagnostics.report(error);
+                }
+            } else if (module.error != null) {
+                diagnostics.report(Diagnostics.entry(next.token, module.error)
+                    .in(next.from));
+            }
+            if (module.statements != null) {
+                addImports(next.path, next.path.getParent(), module.statements,
+                    pending);
+            }
+        }
+    }
+
+    // An import statement, and the module it's in, or null.
+    private static class Import {
+        final Path path;
+        final Token token;
+        final Path from;
+
+        Import(Path path, Token token, Path from) {
+            this.path = path;
+            this.token = token;
+            this.from = from;
+        }
+    }
+
+    private static void addImports(Path from, Path directory,
+                                   List<Stmt> statements, Deque<Import> imports) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Import) {
+                Token path = ((Stmt.Import)statement).path;
+                imports.addLast(new Import(resolve(directory, (String)path.literal),
+                    path, from));
+            }
+        }
+    }
+
+    static LoxModule load(Path path) {
+        return submit(path).join();
+    }
+
+    private static ForkJoinTask<LoxModule> submit(Path path) {
+        return modules.computeIfAbsent(path,
+            key -> ForkJoinPool.commonPool().submit(() -> compile(key)));
+    }
+
+    // Forgets the modules whose files changed since they were compiled,
+    // so they're compiled again when next imported. Returns whether there
+    // were any.
+    static boolean forgetChanged() {
+        boolean changed = false;
+        for (Map.Entry<Path, FileTime> stamp : stamps.entrySet()) {
+            if (stamp(stamp.getKey()).equals(stamp.getValue())) continue;
+            modules.remove(stamp.getKey());
+            stamps.remove(stamp.getKey(), stamp.getValue());
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static FileTime stamp(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException error) {
+            return MISSING;
+        }
+    }
+
+    private static LoxModule compile(Path path) {
+        stamps.put(path, stamp(path));
+        String source;
+        try {
+            source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+        } catch (IOException error) {
+            return new LoxModule(path, null, null,
+                "Can't read module '" + path + "'.", null);
+        }
+
+        Diagnostics diagnostics = new Diagnostics();
+        Scanner scanner = new FastScanner(source, diagnostics);
+        List<Stmt> statements = new Parser(scanner.scanTokens(), diagnostics).parse();
+        if (diagnostics.hadError()) return failed(path, diagnostics);
+
+        // Don't wait for our imports; they compile alongside the rest of us.
+        prefetch(path.getParent(), statements);
+
+        Map<Expr, Integer> locals = new HashMap<>();
+        new Resolver(locals, diagnostics).resolve(statements);
+        if (diagnostics.hadError()) return failed(path, diagnostics);
+
+        return new LoxModule(path, statements,
+            Collections.unmodifiableMap(locals), null, null);
+    }
+
+    private static LoxModule failed(Path path, Diagnostics diagnostics) {
+        List<Diagnostics.Entry> errors = new ArrayList<>();
+        for (Diagnostics.Entry error : diagnostics.errors) errors.add(error.in(path));
+        return new LoxModule(path, null, null,
+            "Module '" + path + "' has errors.", errors);
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.List;
+
+// A function implemented in Java. Its body can throw errors without a
+// token; the interpreter reports those at the call.
+class NativeFunction implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    NativeFunction(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        if (arguments.size() != arity) {
+            throw error("Expected " + arity + " arguments but got " +
+                arguments.size() + ".");
+        }
+        return body.call(interpreter, arguments);
+    }
+
+    static RuntimeError error(String message) {
+        return new RuntimeError(null, message);
+    }
+
+    static double number(Object value) {
+        if (value instanceof Double) return (double)value;
+        throw error("Argument must be a number.");
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.List;
+
+// The methods of a native type, looked up by symbol when Lox code reads a
+// property and bound to the receiver like LoxFunction.bind.
+class NativeMethods<T> {
+    interface Body<T> {
+        Object call(Interpreter interpreter, T self, List<Object> arguments);
+    }
+
+    private static class Method<T> {
+        final int arity;
+        final Body<T> body;
+
+        Method(int arity, Body<T> body) {
+            this.arity = arity;
+            this.body = body;
+        }
+    }
+
+    private final SymbolMap<Method<T>> methods = new SymbolMap<>();
+
+    void define(String name, int arity, Body<T> body) {
+        methods.put(Symbols.intern(name), new Method<>(arity, body));
+    }
+
+    NativeFunction bind(T self, Token name) {
+        Method<T> method = methods.get(name.symbol);
+        if (method == null) {
+            throw new RuntimeError(name,
+                "Undefined property '" + name.lexeme + "'.");
+        }
+        return new NativeFunction(method.arity, (interpreter, arguments) ->
+            method.body.call(interpreter, self, arguments));
+    }
+}
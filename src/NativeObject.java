@@ -0,0 +1,5 @@
+// A value implemented in Java whose properties Lox code can read, the way
+// it reads fields and methods of a LoxInstance.
+interface NativeObject {
+    Object get(Token name);
+}
@@ -0,0 +1,163 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Where print goes. Values are encoded as UTF-8 straight into a reusable
+// buffer, which is written out according to -Dlox.flush:
+//   line   after every line, the default on a console
+//   size   once lox.flushSize bytes are waiting, 8192 by default
+//   timer  every lox.flushInterval milliseconds, 100 by default
+//   exit   only when the buffer is full, and at exit
+// Whatever stdout still holds is written when the JVM shuts down; other
+// sinks are flushed by their owners.
+class OutputSink {
+    static final OutputSink stdout = new OutputSink(
+        new FileOutputStream(FileDescriptor.out),
+        System.getProperty("lox.flush",
+            System.console() != null ? "line" : "size"));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(stdout::flush));
+    }
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int count = 0;
+    private final boolean flushLines;
+    // Write the buffer out once this many bytes are waiting.
+    private final int flushAt;
+
+    OutputSink(OutputStream out, String policy) {
+        this.out = out;
+        this.flushLines = policy.equals("line");
+        switch (policy) {
+            case "line":
+            case "exit":
+                flushAt = buffer.length;
+                break;
+            case "size":
+                flushAt = Math.min(buffer.length,
+                    Math.max(1, Integer.getInteger("lox.flushSize", 8192)));
+                break;
+            case "timer": {
+                flushAt = buffer.length;
+                long interval = Math.max(1, Long.getLong("lox.flushInterval", 100));
+                ScheduledExecutorService timer =
+                    Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "lox-flush");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                timer.scheduleAtFixedRate(this::flush, interval, interval,
+                    TimeUnit.MILLISECONDS);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown flush policy '" + policy + "'.");
+        }
+    }
+
+    // Prints the value the way stringify spells it, and a newline.
+    synchronized void println(Object value) {
+        if (value == null) {
+            writeAscii("nil");
+        } else if (value instanceof Double) {
+            writeNumber((double)value);
+        } else if (value instanceof Boolean) {
+            writeAscii((boolean)value ? "true" : "false");
+        } else if (value instanceof CharSequence) {
+            writeChars((CharSequence)value);
+        } else {
+            writeChars(value.toString());
+        }
+
+        put((byte)'\n');
+        if (flushLines || count >= flushAt) flush();
+    }
+
+    synchronized void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException error) {
+            // Nowhere left to report it.
+        }
+    }
+
+    // Integers print without going through a String. Double.toString
+    // switches to scientific notation from 10^7 on, so those, and numbers
+    // with a fraction, still take the String path to print the same.
+    private void writeNumber(double number) {
+        long whole = (long)number;
+        if (whole != number || whole <= -10_000_000 || whole >= 10_000_000 ||
+            (whole == 0 && Double.doubleToRawLongBits(number) != 0)) {
+            writeAscii(Interpreter.stringify(number));
+            return;
+        }
+
+        if (buffer.length - count < 8) drain();
+        if (whole < 0) {
+            buffer[count++] = '-';
+            whole = -whole;
+        }
+        int digits = 1;
+        for (long rest = whole / 10; rest != 0; rest /= 10) digits++;
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte)('0' + whole % 10);
+            whole /= 10;
+        }
+        count += digits;
+    }
+
+    private void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++) put((byte)text.charAt(i));
+    }
+
+    private void writeChars(CharSequence text) {
+        if (text instanceof Rope) text = text.toString();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put((byte)c);
+            } else if (c < 0x800) {
+                put((byte)(0xc0 | c >> 6));
+                put((byte)(0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                       Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(++i));
+                put((byte)(0xf0 | code >> 18));
+                put((byte)(0x80 | code >> 12 & 0x3f));
+                put((byte)(0x80 | code >> 6 & 0x3f));
+                put((byte)(0x80 | code & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired, as String.getBytes would encode it.
+                put((byte)'?');
+            } else {
+                put((byte)(0xe0 | c >> 12));
+                put((byte)(0x80 | c >> 6 & 0x3f));
+                put((byte)(0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    private void put(byte b) {
+        if (count == buffer.length) drain();
+        buffer[count++] = b;
+    }
+
+    private void drain() {
+        if (count == 0) return;
+        try {
+            out.write(buffer, 0, count);
+        } catch (IOException error) {
+            // Like System.out, drop output nobody can receive.
+        }
+        count = 0;
+    }
+}
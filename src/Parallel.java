@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Data-parallel natives over a List or DoubleArray, run on the common
+// ForkJoinPool:
+//
+//   parallelMap(fn, items) is a List of fn(item) for each item, in order.
+//   parallelReduce(fn, initial, items) is fn(...fn(fn(initial, first),
+//     second)..., last), for an fn that's associative: items are reduced
+//     in pieces, in order, and the pieces combined with fn.
+//
+// fn must be a function Purity found has no side effects: it reads no
+// variable that could change and prints nothing. Items must be values
+// that can't change, nil, booleans, numbers and strings, as for Memo, so
+// the only objects fn can change are ones it made itself, and calls on
+// different threads can't see each other. Others are turned down. Each
+// worker runs fn in its own interpreter, and the caller waits, so nothing
+// else runs Lox code meanwhile.
+class Parallel {
+    // Pieces per worker, so a slow piece doesn't hold the others up.
+    private static final int PIECES = 8;
+
+    private static class MapTask extends RecursiveAction {
+        final Interpreter interpreter;
+        final LoxCallable function;
+        final List<Object> items;
+        final Object[] results;
+        final int start;
+        final int end;
+        final int piece;
+
+        MapTask(Interpreter interpreter, LoxCallable function, List<Object> items,
+            Object[] results, int start, int end, int piece) {
+            this.interpreter = interpreter;
+            this.function = function;
+            this.items = items;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+            this.piece = piece;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > piece) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new MapTask(interpreter, function, items, results,
+                        start, middle, piece),
+                    new MapTask(interpreter, function, items, results,
+                        middle, end, piece));
+                return;
+            }
+            Interpreter worker = Interpreter.worker(interpreter);
+            for (int i = start; i < end; i++) {
+                results[i] = function.call(worker,
+                    Collections.singletonList(items.get(i)));
+            }
+        }
+    }
+
+    // Reduces items[start, end), which isn't empty.
+    private static class ReduceTask extends RecursiveTask<Object> {
+        final Interpreter interpreter;
+        final LoxCallable function;
+        final List<Object> items;
+        final int start;
+        final int end;
+        final int piece;
+
+        ReduceTask(Interpreter interpreter, LoxCallable function, List<Object> items,
+               int start, int end, int piece) {
+            this.interpreter = interpreter;
+            this.function = function;
+            this.items = items;
+            this.start = start;
+            this.end = end;
+            this.piece = piece;
+        }
+
+        @Override
+        protected Object compute() {
+            if (end - start > piece) {
+                int middle = (start + end) >>> 1;
+                ReduceTask left = new ReduceTask(interpreter, function, items, start,
+                    middle, piece);
+                left.fork();
+                Object right = new ReduceTask(interpreter, function, items, middle,
+                    end, piece).compute();
+                Object value = left.join();
+                return function.call(Interpreter.worker(interpreter),
+                    Arrays.asList(value, right));
+            }
+            Interpreter worker = Interpreter.worker(interpreter);
+            Object value = items.get(start);
+            for (int i = start + 1; i < end; i++) {
+                value = function.call(worker, Arrays.asList(value, items.get(i)));
+            }
+            return value;
+        }
+    }
+
+    static NativeFunction mapNative() {
+        return new NativeFunction(2, (interpreter, arguments) -> {
+            LoxCallable function = function(interpreter, arguments.get(0), 1);
+            List<Object> items = items(arguments.get(1));
+            Object[] results = new Object[items.size()];
+            ForkJoinPool.commonPool().invoke(new MapTask(interpreter, function,
+                items, results, 0, items.size(), piece(items.size())));
+            return new LoxList(new ArrayList<>(Arrays.asList(results)));
+        });
+    }
+
+    static NativeFunction reduceNative() {
+        return new NativeFunction(3, (interpreter, arguments) -> {
+            LoxCallable function = function(interpreter, arguments.get(0), 2);
+            Object initial = arguments.get(1);
+            List<Object> items = items(arguments.get(2));
+            if (items.isEmpty()) return initial;
+            Object value = ForkJoinPool.commonPool().invoke(new ReduceTask(interpreter,
+                function, items, 0, items.size(), piece(items.size())));
+            return function.call(interpreter, Arrays.asList(initial, value));
+        });
+    }
+
+    private static int piece(int size) {
+        int pieces = ForkJoinPool.commonPool().getParallelism() * PIECES;
+        return Math.max(1, (size + pieces - 1) / pieces);
+    }
+
+    private static LoxCallable function(Interpreter interpreter, Object value,
+                                        int arity) {
+        LoxCallable function = LoxMap.callback(value, arity);
+        Memo memo = function instanceof LoxFunction
+            ? ((LoxFunction)function).memo : null;
+        if (memo == null || !memo.isPure()) {
+            throw NativeFunction.error("Can't run a function with side effects " +
+                "in parallel.");
+        }
+        // Looking up a global that's still in an image would change the
+        // globals under the other workers.
+        HeapImage.loadAll(interpreter.globals);
+        return function;
+    }
+
+    private static List<Object> items(Object value) {
+        if (value instanceof LoxList) {
+            List<Object> items = ((LoxList)value).items;
+            for (Object item : items) {
+                if (!Memo.isValue(item)) {
+                    throw NativeFunction.error("Items must be nil, booleans, " +
+                        "numbers or strings to run in parallel.");
+                }
+            }
+            return items;
+        }
+        if (value instanceof DoubleArray) {
+            DoubleArray array = (DoubleArray)value;
+            List<Object> items = new ArrayList<>(array.length);
+            for (int i = 0; i < array.length; i++) {
+                items.add(array.data[array.offset + i]);
+            }
+            return items;
+        }
+        throw NativeFunction.error("Argument must be a List or a DoubleArray.");
+    }
+}
@@ -5,10 +5,16 @@ import java.util.ArrayList;
 class Parser {
     private static class ParseError extends RuntimeException {}
     private final List<Token> tokens;
+    private final Diagnostics diagnostics;
     private int current = 0;
 
     Parser(List<Token> tokens) {
+        this(tokens, Lox.diagnostics);
+    }
+
+    Parser(List<Token> tokens, Diagnostics diagnostics) {
         this.tokens = tokens;
+        this.diagnostics = diagnostics;
     }
 
     List<Stmt> parse() {
@@ -20,6 +26,15 @@ class Parser {
         return statements; 
     }
 
+    // Parses a single top-level declaration, for re-parsing part of a file.
+    Stmt parseDeclaration() {
+        return declaration();
+    }
+
+    int position() {
+        return current;
+    }
+
     Expr parseExpression() {
         try {
             return expression();
@@ -33,6 +48,7 @@ class Parser {
             if (match(TokenType.Class)) return classDeclaration();
             if (match(TokenType.Fun)) return function("function");
             if (match(TokenType.Var)) return varDeclaration();
+            if (match(TokenType.Import)) return importDeclaration();
     
             return statement();
         } catch (ParseError error) {
@@ -96,13 +112,21 @@ class Parser {
         return new Stmt.Var(name, initializer);
     }
 
+    private Stmt importDeclaration() {
+        Token keyword = previous();
+        Token path = consume(TokenType.String, "Expect module path.");
+        consume(TokenType.Semicolon, "Expect ';' after import.");
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(TokenType.LeftParen, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(TokenType.RightParen, "Expect ')' after condition.");
         Stmt body = statement();
     
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
       }
 
     private Stmt statement() {
@@ -117,6 +141,7 @@ class Parser {
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
         consume(TokenType.LeftParen, "Expect '(' after 'for'.");
     
         Stmt initializer;
@@ -151,7 +176,7 @@ class Parser {
         }
 
         if (condition == null) condition = new Expr.Literal(true);
-            body = new Stmt.While(condition, body);
+            body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -229,7 +254,7 @@ class Parser {
         return peek().type == type;
     }
 
-    private boolean isAtEnd() {
+    boolean isAtEnd() {
         return peek().type == TokenType.Eof;
     }
     
@@ -425,7 +450,7 @@ class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        diagnostics.error(token, message);
         return new ParseError();
     }
 
@@ -439,6 +464,7 @@ class Parser {
                 case Class:
                 case Fun:
                 case Var:
+                case Import:
                 case For:
                 case If:
                 case While:
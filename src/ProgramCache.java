@@ -0,0 +1,305 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stores resolved programs on disk, keyed by a hash of their source, so
+// unchanged scripts skip scanning, parsing and resolution.
+class ProgramCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final int FORMAT = 2;
+
+    // What an entry depends on besides its source: the names of the token
+    // types, which are stored by ordinal, and the classes that scan, parse,
+    // resolve and store programs. Hashing their bytecode means any rebuild
+    // that changes them misses old entries, without anyone having to
+    // remember to bump VERSION.
+    private static final Class<?>[] FRONT_END = {
+        TokenType.class, Token.class, Scanner.class, FastScanner.class,
+        Parser.class, Resolver.class, Expr.class, Stmt.class, FlatAst.class,
+        ProgramCache.class, HeapImage.class, Interpreter.class
+    };
+    static final byte[] BUILD = build();
+
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+
+    private final Path directory;
+
+    ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // The cache is enabled with -Dlox.cache=<directory>.
+    static ProgramCache open() {
+        String directory = System.getProperty("lox.cache");
+        if (directory == null || directory.isEmpty()) return null;
+        return new ProgramCache(Paths.get(directory));
+    }
+
+    private static byte[] build() {
+        MessageDigest digest = sha256();
+        digest.update(Lox.VERSION.getBytes(StandardCharsets.UTF_8));
+        for (TokenType type : TokenType.values()) {
+            digest.update(type.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+        }
+        for (Class<?> type : FRONT_END) {
+            String name = type.getName();
+            name = name.substring(name.lastIndexOf('.') + 1) + ".class";
+            try (InputStream in = type.getResourceAsStream(name)) {
+                // Without the bytecode, fall back to the class name alone.
+                digest.update(in != null ? in.readAllBytes()
+                    : type.getName().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException error) {
+                digest.update(type.getName().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    static boolean readBuild(ByteBuffer in) {
+        byte[] build = new byte[BUILD.length];
+        in.get(build);
+        return MessageDigest.isEqual(build, BUILD);
+    }
+
+    static byte[] hash(byte[] source) {
+        MessageDigest digest = sha256();
+        digest.update(BUILD);
+        digest.update(Charset.defaultCharset().name()
+            .getBytes(StandardCharsets.UTF_8));
+        return digest.digest(source);
+    }
+
+    // Returns the cached program, with its resolution results handed to the
+    // interpreter, or null if there is no usable entry.
+    List<Stmt> load(byte[] key, Interpreter interpreter) {
+        Path path = pathFor(key);
+        if (!Files.isRegularFile(path)) return null;
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, key, interpreter);
+        } catch (IOException | RuntimeException error) {
+            // Corrupt or foreign entry; compile from source instead.
+            return null;
+        }
+    }
+
+    void store(byte[] key, List<Stmt> statements, Interpreter interpreter) {
+        try {
+            byte[] data = write(key, statements, interpreter);
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, pathFor(key), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException error) {
+            // Caching is best effort.
+        }
+    }
+
+    private Path pathFor(byte[] key) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return directory.resolve(name.append(".loxc").toString());
+    }
+
+    private static byte[] write(byte[] key, List<Stmt> statements,
+                                Interpreter interpreter) throws IOException {
+        FlatAst ast = new FlatAst();
+        List<int[]> locals = new ArrayList<>();
+        FlatAst.Encoder encoder = new FlatAst.Encoder(ast) {
+            @Override
+            int encoded(Expr expr, int node) {
+                Integer depth = interpreter.resolvedDepth(expr);
+                if (depth != null) locals.add(new int[] { node, depth });
+                return node;
+            }
+        };
+        int program = encoder.encodeStmts(statements);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeInt(FlatAst.SCHEMA);
+        out.write(BUILD);
+        out.write(key);
+
+        writeInts(out, ast.nodes, ast.nodeCount * FlatAst.NODE_SIZE);
+        writeInts(out, ast.lists, ast.listsSize);
+
+        out.writeInt(ast.tokenCount);
+        for (int i = 0; i < ast.tokenCount; i++) {
+            Token token = ast.tokens[i];
+            out.writeInt(token.type.ordinal());
+            out.writeInt(token.line);
+            writeString(out, token.lexeme);
+            writeValue(out, token.literal);
+        }
+
+        out.writeInt(ast.constantCount);
+        for (int i = 0; i < ast.constantCount; i++) {
+            writeValue(out, ast.constants[i]);
+        }
+
+        out.writeInt(locals.size());
+        for (int[] local : locals) {
+            out.writeInt(local[0]);
+            out.writeInt(local[1]);
+        }
+
+        out.writeInt(program);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<Stmt> read(ByteBuffer in, byte[] key,
+                                   Interpreter interpreter) {
+        if (in.getInt() != MAGIC || in.getInt() != FORMAT ||
+            in.getInt() != FlatAst.SCHEMA || !readBuild(in)) {
+            return null;
+        }
+        byte[] stored = new byte[key.length];
+        in.get(stored);
+        if (!MessageDigest.isEqual(stored, key)) return null;
+
+        FlatAst ast = new FlatAst();
+        ast.nodes = readInts(in);
+        ast.nodeCount = ast.nodes.length / FlatAst.NODE_SIZE;
+        ast.lists = readInts(in);
+        ast.listsSize = ast.lists.length;
+
+        TokenType[] types = TokenType.values();
+        ast.tokenCount = in.getInt();
+        ast.tokens = new Token[ast.tokenCount];
+        for (int i = 0; i < ast.tokenCount; i++) {
+            TokenType type = types[in.getInt()];
+            int line = in.getInt();
+            String lexeme = readString(in);
+            ast.tokens[i] = new Token(type, lexeme, readValue(in), line);
+        }
+
+        ast.constantCount = in.getInt();
+        ast.constants = new Object[ast.constantCount];
+        for (int i = 0; i < ast.constantCount; i++) {
+            ast.constants[i] = readValue(in);
+        }
+
+        int count = in.getInt();
+        Map<Integer, Integer> depths = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int node = in.getInt();
+            depths.put(node, in.getInt());
+        }
+        int program = in.getInt();
+        if (in.hasRemaining()) return null;
+
+        // Only hand resolution results over once the whole entry decoded.
+        Map<Expr, Integer> locals = new IdentityHashMap<>();
+        FlatAst.Decoder decoder = new FlatAst.Decoder(ast) {
+            @Override
+            Expr decoded(int node, Expr expr) {
+                Integer depth = depths.get(node);
+                if (depth != null) locals.put(expr, depth);
+                return expr;
+            }
+        };
+        List<Stmt> statements = decoder.program(program);
+        for (Map.Entry<Expr, Integer> local : locals.entrySet()) {
+            interpreter.resolve(local.getKey(), local.getValue());
+        }
+        return statements;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values,
+                          int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    static void writeString(DataOutputStream out,
+                            String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeValue(DataOutputStream out,
+                           Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean)value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double)value);
+        } else if (LoxString.isString(value)) {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        } else {
+            throw new IllegalArgumentException(
+                "Can't cache constant " + value + ".");
+        }
+    }
+
+    static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case NIL: return null;
+            case FALSE: return false;
+            case TRUE: return true;
+            case NUMBER: return in.getDouble();
+            case STRING: return readString(in);
+        }
+        throw new IllegalStateException("Unknown value tag " + tag + ".");
+    }
+}
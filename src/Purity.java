@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+// Finds the functions whose calls can be memoized: their result depends
+// only on their arguments, and calling them has no effect anyone else can
+// see. Inside such a function anything goes with its own locals and the
+// collections it creates, but it can't print, declare classes, import,
+// set a field, assign a variable declared outside it, or read one, unless
+// that variable names another such function and is never reassigned, or
+// is one of the natives below. Calls with arguments that could change
+// later, or that return one, aren't memoized; see Memo.
+//
+// Scopes are tracked the way the Resolver does, so a name means here what
+// it will mean when the program runs.
+class Purity implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final Set<String> PURE_NATIVES = Set.of("DoubleArray",
+        "Map", "Set", "StringBuilder", "List", "parseNumber", "formatNumber",
+        "jsonParse", "jsonStringify");
+
+    private static class Binding {
+        // The function it's declared in, or null at top level.
+        final Node owner;
+        // The declaration, if it names a function.
+        final Stmt.Function function;
+        boolean reassigned = false;
+
+        Binding(Node owner, Stmt.Function function) {
+            this.owner = owner;
+            this.function = function;
+        }
+    }
+
+    private static class Node {
+        final Stmt.Function declaration;
+        final Node parent;
+        boolean impure;
+        // Functions declared outside this one that it reads.
+        final List<Binding> uses = new ArrayList<>();
+        // Top-level names it reads, functions and natives.
+        final Set<Integer> globals = new HashSet<>();
+
+        Node(Stmt.Function declaration, Node parent, boolean impure) {
+            this.declaration = declaration;
+            this.parent = parent;
+            this.impure = impure;
+        }
+
+        boolean encloses(Node node) {
+            for (; node != null; node = node.parent) {
+                if (node == this) return true;
+            }
+            return false;
+        }
+    }
+
+    private final Environment environment;
+    private final Map<Stmt.Function, Node> nodes = new HashMap<>();
+    private final Map<Integer, Binding> globals = new HashMap<>();
+    private final Stack<Map<Integer, Binding>> scopes = new Stack<>();
+    private Node current = null;
+
+    private Purity(Environment environment) {
+        this.environment = environment;
+    }
+
+    // Gives each function in statements that can be memoized a Memo, and
+    // pins the top-level names it depends on. statements run at the top
+    // level of environment. The names they declare there are unpinned
+    // first, since functions analyzed earlier can't rely on them anymore.
+    static void analyze(Interpreter interpreter, List<Stmt> statements,
+                        Environment environment) {
+        Purity purity = new Purity(environment);
+        for (Stmt statement : statements) purity.declareGlobal(statement);
+        for (int symbol : purity.globals.keySet()) {
+            interpreter.unpin(environment.globals, symbol);
+        }
+        for (Stmt statement : statements) statement.accept(purity);
+        purity.propagate();
+
+        for (Node node : purity.nodes.values()) {
+            if (node.impure) continue;
+            Memo memo = interpreter.memos.computeIfAbsent(node.declaration,
+                declaration -> new Memo());
+            for (int symbol : purity.dependencies(node)) {
+                // Natives are found in the interpreter's globals.
+                interpreter.pin(environment.globals, symbol, memo);
+                if (environment.globals != interpreter.globals) {
+                    interpreter.pin(interpreter.globals, symbol, memo);
+                }
+            }
+        }
+    }
+
+    private void declareGlobal(Stmt statement) {
+        Token name;
+        Stmt.Function function = null;
+        if (statement instanceof Stmt.Function) {
+            function = (Stmt.Function)statement;
+            name = function.name;
+        } else if (statement instanceof Stmt.Var) {
+            name = ((Stmt.Var)statement).name;
+        } else if (statement instanceof Stmt.Class) {
+            name = ((Stmt.Class)statement).name;
+        } else {
+            return;
+        }
+
+        Binding binding = globals.get(name.symbol);
+        if (binding != null) {
+            binding.reassigned = true;
+        } else {
+            globals.put(name.symbol, new Binding(null, function));
+        }
+    }
+
+    // Marks the functions that use impure ones, or reassigned names, until
+    // nothing changes.
+    private void propagate() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Node node : nodes.values()) {
+                if (node.impure) continue;
+                for (Binding use : node.uses) {
+                    Node callee = nodes.get(use.function);
+                    if (use.reassigned || callee == null || callee.impure) {
+                        node.impure = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // The top-level names node's result depends on, through the functions
+    // it calls too.
+    private Set<Integer> dependencies(Node node) {
+        Set<Integer> symbols = new HashSet<>();
+        Set<Node> visited = new HashSet<>();
+        List<Node> pending = new ArrayList<>();
+        pending.add(node);
+        while (!pending.isEmpty()) {
+            Node next = pending.remove(pending.size() - 1);
+            if (!visited.add(next)) continue;
+            symbols.addAll(next.globals);
+            for (Binding use : next.uses) pending.add(nodes.get(use.function));
+        }
+        return symbols;
+    }
+
+    // Marks the current function and every one enclosing it.
+    private void impure() {
+        for (Node node = current; node != null; node = node.parent) {
+            node.impure = true;
+        }
+    }
+
+    private void read(Token name) {
+        Binding binding = lookup(name.symbol);
+        for (Node node = current; node != null; node = node.parent) {
+            if (binding == null) {
+                if (!isPureGlobal(name)) {
+                    node.impure = true;
+                } else {
+                    node.globals.add(name.symbol);
+                }
+                continue;
+            }
+            if (node.encloses(binding.owner)) break;
+            if (binding.function == null) {
+                node.impure = true;
+            } else {
+                node.uses.add(binding);
+                if (binding.owner == null) node.globals.add(name.symbol);
+            }
+        }
+    }
+
+    private void assign(Token name) {
+        Binding binding = lookup(name.symbol);
+        if (binding != null) binding.reassigned = true;
+        for (Node node = current; node != null; node = node.parent) {
+            if (binding != null && node.encloses(binding.owner)) break;
+            node.impure = true;
+        }
+    }
+
+    // Whether a name these statements don't declare is one of
+    // PURE_NATIVES, or a function an earlier analysis found pure, as
+    // in a REPL session.
+    private boolean isPureGlobal(Token name) {
+        for (Environment scope = environment.globals; scope != null;
+             scope = scope.parent) {
+            if (!scope.values.containsKey(name.symbol)) continue;
+            Object value = scope.values.get(name.symbol);
+            if (value instanceof LoxFunction) {
+                Memo memo = ((LoxFunction)value).memo;
+                return memo != null && memo.isPure();
+            }
+            return value instanceof NativeFunction &&
+                PURE_NATIVES.contains(name.lexeme);
+        }
+        return false;
+    }
+
+    private Binding lookup(int symbol) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Binding binding = scopes.get(i).get(symbol);
+            if (binding != null) return binding;
+        }
+        return globals.get(symbol);
+    }
+
+    private void declare(Token name, Stmt.Function function) {
+        // Top-level names were all declared up front.
+        if (scopes.isEmpty()) return;
+        scopes.peek().put(name.symbol, new Binding(current, function));
+    }
+
+    private void function(Stmt.Function function, boolean isMethod) {
+        Node enclosing = current;
+        current = new Node(function, enclosing, isMethod);
+        if (!isMethod) nodes.put(function, current);
+
+        scopes.push(new HashMap<>());
+        for (Token param : function.params) declare(param, null);
+        for (Stmt statement : function.body) statement.accept(this);
+        scopes.pop();
+        current = enclosing;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.push(new HashMap<>());
+        for (Stmt statement : stmt.statements) statement.accept(this);
+        scopes.pop();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        impure();
+        declare(stmt.name, null);
+        if (stmt.superclass != null) stmt.superclass.accept(this);
+        for (Stmt.Function method : stmt.methods) function(method, true);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.name, stmt);
+        function(stmt, false);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        stmt.condition.accept(this);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        impure();
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        impure();
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) stmt.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) stmt.initializer.accept(this);
+        declare(stmt.name, null);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        stmt.condition.accept(this);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        expr.value.accept(this);
+        assign(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) argument.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        expr.object.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    // The instance may be an argument, or reached from one, and so seen
+    // by the caller. It can't be one the function made itself, since
+    // reading a class makes a function impure.
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        impure();
+        expr.value.accept(this);
+        expr.object.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        impure();
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        impure();
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        read(expr.name);
+        return null;
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Regular expressions, in java.util.regex syntax. regex(pattern, flags)
+// compiles one, with flags from "imsxu", and has the methods match(text),
+// findAll(text), replace(text, replacement) and split(text). The natives
+// regexMatch, regexFindAll, regexReplace and regexSplit take either one of
+// those or a pattern string as their first argument.
+//
+// Compiled patterns are kept in an LRU cache keyed by pattern and flags,
+// up to lox.regexCache of them, so a pattern string in a loop is compiled
+// once; regexStats() reports on it. Each thread reuses one Matcher per
+// pattern. Matched text is returned as slices of the input.
+class Regex implements NativeObject {
+    private static final int LIMIT =
+        Math.max(1, Integer.getInteger("lox.regexCache", 256));
+
+    private static final NativeMethods<Regex> methods = new NativeMethods<>();
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+    private static final LinkedHashMap<String, Regex> cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Regex> eldest) {
+                if (size() <= LIMIT) return false;
+                evictions++;
+                return true;
+            }
+        };
+
+    static {
+        methods.define("match", 1, (interpreter, regex, arguments) ->
+            regex.match(text(arguments.get(0))));
+        methods.define("findAll", 1, (interpreter, regex, arguments) ->
+            regex.findAll(text(arguments.get(0))));
+        methods.define("replace", 2, (interpreter, regex, arguments) ->
+            regex.replace(text(arguments.get(0)), text(arguments.get(1))));
+        methods.define("split", 1, (interpreter, regex, arguments) ->
+            regex.split(text(arguments.get(0))));
+    }
+
+    private final String source;
+    private final String flags;
+    private final Pattern pattern;
+    private final ThreadLocal<Matcher> matchers;
+
+    private Regex(String source, String flags, Pattern pattern) {
+        this.source = source;
+        this.flags = flags;
+        this.pattern = pattern;
+        this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    }
+
+    static Regex compile(String source, String flags) {
+        String key = flags + "/" + source;
+        synchronized (cache) {
+            Regex regex = cache.get(key);
+            if (regex != null) {
+                hits++;
+                return regex;
+            }
+            misses++;
+        }
+
+        Regex regex;
+        try {
+            regex = new Regex(source, flags, Pattern.compile(source, flags(flags)));
+        } catch (PatternSyntaxException error) {
+            throw NativeFunction.error("Invalid regex: " + error.getDescription() +
+                " at index " + error.getIndex() + ".");
+        }
+        synchronized (cache) {
+            cache.put(key, regex);
+        }
+        return regex;
+    }
+
+    private static int flags(String flags) {
+        int bits = 0;
+        for (int i = 0; i < flags.length(); i++) {
+            switch (flags.charAt(i)) {
+                case 'i': bits |= Pattern.CASE_INSENSITIVE; break;
+                case 'm': bits |= Pattern.MULTILINE; break;
+                case 's': bits |= Pattern.DOTALL; break;
+                case 'x': bits |= Pattern.COMMENTS; break;
+                case 'u': bits |= Pattern.UNICODE_CASE; break;
+                default:
+                    throw NativeFunction.error("Unknown regex flag '" +
+                        flags.charAt(i) + "'.");
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public Object get(Token name) {
+        return methods.bind(this, name);
+    }
+
+    // The whole match and each group of the first match, with nil for
+    // groups that didn't take part, or nil if nothing matches.
+    private Object match(CharSequence text) {
+        Matcher matcher = matcher(text);
+        try {
+            if (!matcher.find()) return null;
+            List<Object> groups = new ArrayList<>();
+            for (int i = 0; i <= matcher.groupCount(); i++) {
+                groups.add(matcher.start(i) < 0 ? null :
+                    StringSlice.of(text, matcher.start(i), matcher.end(i)));
+            }
+            return new LoxList(groups);
+        } finally {
+            release(matcher);
+        }
+    }
+
+    private LoxList findAll(CharSequence text) {
+        Matcher matcher = matcher(text);
+        try {
+            List<Object> matches = new ArrayList<>();
+            while (matcher.find()) {
+                matches.add(StringSlice.of(text, matcher.start(), matcher.end()));
+            }
+            return new LoxList(matches);
+        } finally {
+            release(matcher);
+        }
+    }
+
+    // $1 in the replacement stands for the first group, and \$ for $.
+    private String replace(CharSequence text, CharSequence replacement) {
+        Matcher matcher = matcher(text);
+        try {
+            return matcher.replaceAll(replacement.toString());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException error) {
+            throw NativeFunction.error("Invalid replacement: " +
+                error.getMessage());
+        } finally {
+            release(matcher);
+        }
+    }
+
+    // Like text.split(separator): empty fields are kept, except before an
+    // empty match at the start.
+    private LoxList split(CharSequence text) {
+        Matcher matcher = matcher(text);
+        try {
+            List<Object> fields = new ArrayList<>();
+            int start = 0;
+            while (matcher.find()) {
+                if (matcher.end() == 0) continue;
+                fields.add(StringSlice.of(text, start, matcher.start()));
+                start = matcher.end();
+            }
+            fields.add(StringSlice.of(text, start, text.length()));
+            return new LoxList(fields);
+        } finally {
+            release(matcher);
+        }
+    }
+
+    private Matcher matcher(CharSequence text) {
+        return matchers.get().reset(text);
+    }
+
+    // Lets go of the text, which may be large.
+    private static void release(Matcher matcher) {
+        matcher.reset("");
+    }
+
+    private static CharSequence text(Object value) {
+        if (!LoxString.isString(value)) {
+            throw NativeFunction.error("Argument must be a string.");
+        }
+        // A Matcher reads one character at a time.
+        return value instanceof Rope ? value.toString() : (CharSequence)value;
+    }
+
+    private static Regex regex(Object value) {
+        if (value instanceof Regex) return (Regex)value;
+        return compile(text(value).toString(), "");
+    }
+
+    static NativeFunction constructor() {
+        return new NativeFunction(2, (interpreter, arguments) ->
+            compile(text(arguments.get(0)).toString(),
+                text(arguments.get(1)).toString()));
+    }
+
+    static NativeFunction matchNative() {
+        return new NativeFunction(2, (interpreter, arguments) ->
+            regex(arguments.get(0)).match(text(arguments.get(1))));
+    }
+
+    static NativeFunction findAllNative() {
+        return new NativeFunction(2, (interpreter, arguments) ->
+            regex(arguments.get(0)).findAll(text(arguments.get(1))));
+    }
+
+    static NativeFunction replaceNative() {
+        return new NativeFunction(3, (interpreter, arguments) ->
+            regex(arguments.get(0)).replace(text(arguments.get(1)),
+                text(arguments.get(2))));
+    }
+
+    static NativeFunction splitNative() {
+        return new NativeFunction(2, (interpreter, arguments) ->
+            regex(arguments.get(0)).split(text(arguments.get(1))));
+    }
+
+    // regexStats() is a Map with the keys size, limit, hits, misses and
+    // evictions.
+    static NativeFunction stats() {
+        return new NativeFunction(0, (interpreter, arguments) -> {
+            LoxMap stats = new LoxMap();
+            synchronized (cache) {
+                stats.put("size", (double)cache.size());
+                stats.put("limit", (double)LIMIT);
+                stats.put("hits", (double)hits);
+                stats.put("misses", (double)misses);
+                stats.put("evictions", (double)evictions);
+            }
+            return stats;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "/" + source + "/" + flags;
+    }
+}
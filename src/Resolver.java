@@ -1,4 +1,3 @@
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
@@ -6,11 +5,17 @@ import java.util.Stack;
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private FunctionType currentFunction = FunctionType.None;
     private ClassType currentClass = ClassType.None;
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Map<Expr, Integer> locals;
+    private final Diagnostics diagnostics;
+    private final Stack<SymbolMap<Boolean>> scopes = new Stack<>();
 
     Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+        this(interpreter.locals, interpreter.diagnostics);
+    }
+
+    Resolver(Map<Expr, Integer> locals, Diagnostics diagnostics) {
+        this.locals = locals;
+        this.diagnostics = diagnostics;
     }
 
     private enum FunctionType {
@@ -61,10 +66,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.None) {
-            Lox.error(expr.keyword,
+            diagnostics.error(expr.keyword,
                 "Can't use 'super' outside of a class.");
         } else if (currentClass != ClassType.Subclass) {
-            Lox.error(expr.keyword,
+            diagnostics.error(expr.keyword,
                 "Can't use 'super' in a class with no superclass.");
         }
 
@@ -105,7 +110,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.None) {
-            Lox.error(expr.keyword,
+            diagnostics.error(expr.keyword,
                 "Can't use 'this' outside of a class.");
             return null;
         }
@@ -117,8 +122,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void  visitVariableExpr(Expr.Variable expr)  {
         if (!scopes.isEmpty() &&
-            scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+            scopes.peek().get(expr.name.symbol) == Boolean.FALSE) {
+            diagnostics.error(expr.name, "Can't read local variable in its own initializer.");
         }
 
         resolveLocal(expr, expr.name);
@@ -158,8 +163,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         define(stmt.name);
 
         if (stmt.superclass != null &&
-            stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-            Lox.error(stmt.superclass.name,
+            stmt.name.symbol == stmt.superclass.name.symbol) {
+            diagnostics.error(stmt.superclass.name,
                 "A class can't inherit from itself.");
         }
 
@@ -168,14 +173,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolve(stmt.superclass);
         
             beginScope();
-            scopes.peek().put("super", true);
+            scopes.peek().put(Symbols.SUPER, true);
         }
         beginScope();
-        scopes.peek().put("this", true);
+        scopes.peek().put(Symbols.THIS, true);
 
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.Method;
-            if (method.name.lexeme.equals("init")) {
+            if (method.name.symbol == Symbols.INIT) {
                 declaration = FunctionType.Initializer;
             }
             resolveFunction(method, declaration); 
@@ -199,6 +204,14 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        if (!scopes.isEmpty()) {
+            diagnostics.error(stmt.keyword, "Can only import at top level.");
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         resolve(stmt.expression);
@@ -208,12 +221,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.None) {
-            Lox.error(stmt.keyword, "Can't return from top-level code.");
+            diagnostics.error(stmt.keyword, "Can't return from top-level code.");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.Initializer) {
-                Lox.error(stmt.keyword,
+                diagnostics.error(stmt.keyword,
                     "Can't return a value from an initializer.");
             }
 
@@ -255,7 +268,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new SymbolMap<Boolean>());
     }
 
     private void endScope() {
@@ -265,24 +278,24 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private void declare(Token name) {
         if (scopes.isEmpty()) return;
     
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
-            Lox.error(name,
+        SymbolMap<Boolean> scope = scopes.peek();
+        if (scope.containsKey(name.symbol)) {
+            diagnostics.error(name,
                 "Already a variable with this name in this scope.");
         }
 
-        scope.put(name.lexeme, false);
+        scope.put(name.symbol, false);
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().put(name.symbol, true);
     }
 
     private void resolveLocal(Expr expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+            if (scopes.get(i).containsKey(name.symbol)) {
+                locals.put(expr, scopes.size() - 1 - i);
                 return;
             }
         }
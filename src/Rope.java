@@ -0,0 +1,65 @@
+import java.util.ArrayDeque;
+
+// The concatenation of two strings, copied into one only when something
+// needs its characters. Building a string in a loop makes a deep chain of
+// ropes, so flattening walks it with a stack of its own. The copy is
+// what a run's memory budget is charged for, when it's made.
+class Rope extends LoxString {
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+    private final Budget budget;
+    private String flat;
+
+    Rope(CharSequence left, CharSequence right, Budget budget) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+        this.budget = budget;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            if (budget != null && !budget.charge(Budget.string(length))) {
+                throw new RuntimeError(null, "Out of memory.");
+            }
+            char[] chars = new char[length];
+            int position = 0;
+            ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                CharSequence part = pending.pop();
+                if (part instanceof Rope && ((Rope)part).flat == null) {
+                    Rope rope = (Rope)part;
+                    pending.push(rope.right);
+                    pending.push(rope.left);
+                    continue;
+                }
+                String text = part.toString();
+                text.getChars(0, text.length(), chars, position);
+                position += text.length();
+            }
+            flat = new String(chars);
+            // The parts aren't needed any more.
+            left = null;
+            right = null;
+        }
+        return flat;
+    }
+}
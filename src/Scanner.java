@@ -1,30 +1,76 @@
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map; 
+import java.util.function.IntPredicate;
 
 class Scanner {
-    private final String source;
+    final String source;
+    final Diagnostics diagnostics;
     private final List<Token> tokens = new ArrayList<>();
-    private int start = 0;
-    private int current = 0;
-    private int line = 1;
+    int start = 0;
+    int current = 0;
+    int line = 1;
+
+    // Where each token's lexeme starts, and on which line.
+    private int[] starts = new int[64];
+    private int[] startLines = new int[64];
+    private int startLine = 1;
 
     Scanner(String source) {
+        this(source, Lox.diagnostics);
+    }
+
+    Scanner(String source, Diagnostics diagnostics) {
+        this(source, 0, 1, diagnostics);
+    }
+
+    // Scans from the middle of a source, which must be between tokens.
+    Scanner(String source, int offset, int line, Diagnostics diagnostics) {
         this.source = source;
+        this.current = offset;
+        this.line = line;
+        this.diagnostics = diagnostics;
     }
 
     List<Token> scanTokens() {
-        while (!isAtEnd()) {
+        scanTokens(offset -> false);
+        tokens.add(new Token(TokenType.Eof, "", null, line));
+        return tokens;
+    }
+
+    // Scans until the end, or until the next lexeme would start at an
+    // offset `stop` accepts. Doesn't add an Eof token.
+    List<Token> scanTokens(IntPredicate stop) {
+        while (!isAtEnd() && !stop.test(current)) {
             // We are at the beginning of the next lexeme.
             start = current;
+            startLine = line;
             scanToken();
         }
 
-        tokens.add(new Token(TokenType.Eof, "", null, line));
         return tokens;
     }
 
+    int position() {
+        return current;
+    }
+
+    int line() {
+        return line;
+    }
+
+    int tokenCount() {
+        return tokens.size();
+    }
+
+    int tokenStart(int index) {
+        return starts[index];
+    }
+
+    int tokenStartLine(int index) {
+        return startLines[index];
+    }
+
     private boolean isAtEnd() {
         return current >= source.length();
     }
@@ -51,14 +97,14 @@ class Scanner {
         return source.charAt(current + 1);
     } 
 
-    private void string() {
+    void string() {
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') line++;
             advance();
         }
     
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            diagnostics.error(line, "Unterminated string.");
             return;
         }
     
@@ -88,12 +134,18 @@ class Scanner {
     private void identifierOrKeyword() {
         while (isAlphaNumeric(peek())) advance();
     
-        String text = source.substring(start, current);
-        addToken(
-            keywords.getOrDefault(text, TokenType.Identifier));      
+        TokenType type = Symbols.keyword(source, start, current);
+        if (type == null) type = TokenType.Identifier;
+        if (Token.isName(type)) {
+            // Every occurrence of a name shares one interned lexeme.
+            int symbol = Symbols.intern(source, start, current);
+            addToken(type, Symbols.name(symbol), null, symbol);
+        } else {
+            addToken(type, Symbols.spelling(type), null, -1);
+        }
     }
 
-    private void scanToken() {
+    void scanToken() {
         char c = advance();
         switch (c) {
             case '(': addToken(TokenType.LeftParen); break;
@@ -143,7 +195,7 @@ class Scanner {
                 } else if (isAlpha(c)) {
                     identifierOrKeyword();    
                 }else {
-                    Lox.error(line, "Unexpected character.");
+                    diagnostics.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -153,9 +205,19 @@ class Scanner {
         addToken(type, null);
     }
     
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    void addToken(TokenType type, Object literal) {
+        addToken(type, source.substring(start, current), literal, -1);
+    }
+
+    private void addToken(TokenType type, String text, Object literal,
+                          int symbol) {
+        if (tokens.size() == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            startLines = Arrays.copyOf(startLines, startLines.length * 2);
+        }
+        starts[tokens.size()] = start;
+        startLines[tokens.size()] = startLine;
+        tokens.add(new Token(type, text, literal, line, symbol));
     }
 
 
@@ -172,27 +234,4 @@ class Scanner {
     private static boolean isAlphaNumeric(char c) {
         return isAlpha(c) || isDigit(c);
     }
-
-
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",    TokenType.And);
-        keywords.put("class",  TokenType.Class);
-        keywords.put("else",   TokenType.Else);
-        keywords.put("false",  TokenType.False);
-        keywords.put("for",    TokenType.For);
-        keywords.put("fun",    TokenType.Fun);
-        keywords.put("if",     TokenType.If);
-        keywords.put("nil",    TokenType.Nil);
-        keywords.put("or",     TokenType.Or);
-        keywords.put("print",  TokenType.Print);
-        keywords.put("return", TokenType.Return);
-        keywords.put("super",  TokenType.Super);
-        keywords.put("this",   TokenType.This);
-        keywords.put("true",   TokenType.True);
-        keywords.put("var",    TokenType.Var);
-        keywords.put("while",  TokenType.While);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Methods on string values, and the natives for converting between
+// strings and numbers. Substrings, split fields and trimmed strings are
+// StringSlices over the original.
+class StringMethods {
+    private static final NativeMethods<CharSequence> methods =
+        new NativeMethods<>();
+
+    // One-character strings for charAt, so it doesn't allocate for Latin-1.
+    private static final String[] characters = new String[256];
+
+    // The powers of ten a double holds exactly.
+    private static final double[] POWERS = new double[23];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) POWERS[i] = POWERS[i - 1] * 10;
+        for (int i = 0; i < characters.length; i++) {
+            characters[i] = String.valueOf((char)i);
+        }
+
+        methods.define("length", 0, (interpreter, text, arguments) ->
+            (double)text.length());
+        methods.define("charAt", 1, (interpreter, text, arguments) -> {
+            char c = text.charAt(index(text, arguments.get(0), false));
+            return c < characters.length ? characters[c] : String.valueOf(c);
+        });
+        methods.define("substring", 2, (interpreter, text, arguments) -> {
+            int start = index(text, arguments.get(0), true);
+            int end = index(text, arguments.get(1), true);
+            if (start > end) throw NativeFunction.error("Substring ends before it starts.");
+            return StringSlice.of(text, start, end);
+        });
+        methods.define("indexOf", 1, (interpreter, text, arguments) ->
+            (double)indexOf(text, string(arguments.get(0)), 0));
+        methods.define("split", 1, (interpreter, text, arguments) -> {
+            CharSequence separator = string(arguments.get(0));
+            if (separator.length() == 0) {
+                throw NativeFunction.error("Separator must not be empty.");
+            }
+            List<Object> fields = new ArrayList<>();
+            int start = 0;
+            for (int end; (end = indexOf(text, separator, start)) >= 0;
+                 start = end + separator.length()) {
+                fields.add(StringSlice.of(text, start, end));
+            }
+            fields.add(StringSlice.of(text, start, text.length()));
+            return new LoxList(fields);
+        });
+        methods.define("trim", 0, (interpreter, text, arguments) -> {
+            int start = 0;
+            int end = text.length();
+            while (start < end && text.charAt(start) <= ' ') start++;
+            while (end > start && text.charAt(end - 1) <= ' ') end--;
+            return StringSlice.of(text, start, end);
+        });
+    }
+
+    static Object bind(CharSequence text, Token name) {
+        return methods.bind(text, name);
+    }
+
+    // parseNumber(text) is the number text spells, or nil.
+    static NativeFunction parseNumber() {
+        return new NativeFunction(1, (interpreter, arguments) ->
+            parse(string(arguments.get(0))));
+    }
+
+    // formatNumber(number, decimals) with a fixed number of decimals.
+    static NativeFunction formatNumber() {
+        return new NativeFunction(2, (interpreter, arguments) -> {
+            double number = NativeFunction.number(arguments.get(0));
+            double decimals = NativeFunction.number(arguments.get(1));
+            if (decimals < 0 || decimals > 20 || decimals != Math.floor(decimals)) {
+                throw NativeFunction.error("Decimals must be a whole number from 0 to 20.");
+            }
+            return String.format(Locale.ROOT, "%." + (int)decimals + "f", number);
+        });
+    }
+
+    private static CharSequence string(Object value) {
+        if (LoxString.isString(value)) return (CharSequence)value;
+        throw NativeFunction.error("Argument must be a string.");
+    }
+
+    private static int index(CharSequence text, Object value, boolean bound) {
+        double index = NativeFunction.number(value);
+        int limit = bound ? text.length() : text.length() - 1;
+        if (index < 0 || index > limit || index != Math.floor(index)) {
+            throw NativeFunction.error("Index out of bounds.");
+        }
+        return (int)index;
+    }
+
+    private static int indexOf(CharSequence text, CharSequence needle, int from) {
+        if (text instanceof String && needle instanceof String) {
+            return ((String)text).indexOf((String)needle, from);
+        }
+
+        int last = text.length() - needle.length();
+        if (needle.length() == 0) return from <= text.length() ? from : -1;
+        char first = needle.charAt(0);
+        for (int i = from; i <= last; i++) {
+            if (text.charAt(i) != first) continue;
+            int j = 1;
+            while (j < needle.length() && text.charAt(i + j) == needle.charAt(j)) j++;
+            if (j == needle.length()) return i;
+        }
+        return -1;
+    }
+
+    // Decimal numbers like Lox literals, with an optional sign and
+    // exponent. Up to 15 significant digits and a small exponent are
+    // computed exactly from the characters; anything longer goes through
+    // Double.parseDouble.
+    static Object parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int start = i;
+        for (; i < length && isDigit(text.charAt(i)); i++, digits++) {
+            mantissa = mantissa * 10 + (text.charAt(i) - '0');
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            int fraction = i;
+            for (; i < length && isDigit(text.charAt(i)); i++, digits++) {
+                mantissa = mantissa * 10 + (text.charAt(i) - '0');
+                scale++;
+            }
+            if (i == fraction) return null;
+        }
+        if (i == start) return null;
+
+        int exponent = 0;
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            for (; i < length && isDigit(text.charAt(i)); i++) {
+                if (exponent < 10000) exponent = exponent * 10 + (text.charAt(i) - '0');
+            }
+            if (i == exponentStart) return null;
+            if (negativeExponent) exponent = -exponent;
+        }
+        if (i != length) return null;
+
+        int power = exponent - scale;
+        if (digits <= 15 && power >= -22 && power <= 22) {
+            // Both operands are exact, so the one rounding is correct.
+            double value = power < 0 ? mantissa / POWERS[-power]
+                                     : mantissa * POWERS[power];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text.toString());
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
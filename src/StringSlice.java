@@ -0,0 +1,75 @@
+// A substring that shares its parent's characters instead of copying them.
+// Slicing a slice slices the parent, so views never chain.
+class StringSlice extends LoxString {
+    final String parent;
+    final int offset;
+    private final int length;
+    private int hash;
+
+    private StringSlice(String parent, int offset, int length) {
+        this.parent = parent;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // A view even if it pins a large parent, for callers that hand out
+    // many short-lived slices of one buffer.
+    static StringSlice view(String parent, int start, int end) {
+        return new StringSlice(parent, start, end - start);
+    }
+
+    // text[start, end), as a view unless it would keep a much larger
+    // parent alive, in which case it's copied.
+    static CharSequence of(CharSequence text, int start, int end) {
+        if (start == 0 && end == text.length()) return text;
+
+        String parent;
+        int offset = 0;
+        if (text instanceof StringSlice) {
+            StringSlice slice = (StringSlice)text;
+            parent = slice.parent;
+            offset = slice.offset;
+        } else {
+            parent = text.toString();
+        }
+
+        int length = end - start;
+        if (parent.length() >= 1024 && length * 8 < parent.length()) {
+            return parent.substring(offset + start, offset + end);
+        }
+        return new StringSlice(parent, offset + start, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return parent.charAt(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return of(this, start, end);
+    }
+
+    @Override
+    public int hashCode() {
+        // The same as the String's, without making it.
+        int h = hash;
+        if (h == 0) {
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + parent.charAt(i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return parent.substring(offset, offset + length);
+    }
+}
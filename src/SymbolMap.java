@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+// A map from symbol ids to values, kept in insertion order. Most scopes
+// and objects hold a handful of names, so small maps just scan their keys;
+// bigger ones add a hash index over the entries.
+class SymbolMap<V> {
+    private static final int LINEAR = 8;
+
+    private int[] symbols = new int[4];
+    private Object[] values = new Object[4];
+    private int size = 0;
+    // Entry index + 1 per slot, or 0 for empty; null while small.
+    private int[] index;
+
+    int size() {
+        return size;
+    }
+
+    // The symbol and value of the i'th entry, in insertion order.
+    int symbol(int i) {
+        return symbols[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    V value(int i) {
+        return (V)values[i];
+    }
+
+    boolean containsKey(int symbol) {
+        return find(symbol) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int symbol) {
+        int i = find(symbol);
+        return i < 0 ? null : (V)values[i];
+    }
+
+    void put(int symbol, V value) {
+        int i = find(symbol);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        symbols[size] = symbol;
+        values[size] = value;
+        size++;
+
+        if (index != null && size * 2 <= index.length) {
+            insert(size - 1);
+        } else if (size > LINEAR) {
+            index = new int[Integer.highestOneBit(size) * 4];
+            for (int j = 0; j < size; j++) insert(j);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        index = null;
+    }
+
+    private int find(int symbol) {
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                if (symbols[i] == symbol) return i;
+            }
+            return -1;
+        }
+
+        int mask = index.length - 1;
+        for (int slot = slot(symbol) & mask; ; slot = (slot + 1) & mask) {
+            int i = index[slot] - 1;
+            if (i < 0) return -1;
+            if (symbols[i] == symbol) return i;
+        }
+    }
+
+    private void insert(int i) {
+        int mask = index.length - 1;
+        int slot = slot(symbols[i]) & mask;
+        while (index[slot] != 0) slot = (slot + 1) & mask;
+        index[slot] = i + 1;
+    }
+
+    private static int slot(int symbol) {
+        // Ids are dense, so spread neighbours apart.
+        return symbol * 0x9e3779b9 >>> 16;
+    }
+}
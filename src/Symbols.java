@@ -0,0 +1,177 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Interns identifier names. Each distinct name is stored once and gets a
+// dense integer id, which the runtime uses to key its tables. Ids only
+// mean something within one process; anything written to disk uses names.
+// Names are never forgotten, since any table may still be keyed by their
+// ids, which is why names that come from data, such as JSON keys, are
+// only looked up, never interned.
+class Symbols {
+    // Changed only under the lock, so a lookup doesn't need it: a slot is
+    // set, with release semantics, only after its name and hash are, and
+    // a table that's full is replaced, not changed, by a bigger one.
+    private static final class Table {
+        final String[] names;
+        final int[] hashes;
+        // Open addressing over ids + 1, so 0 is an empty slot; twice as
+        // many slots as names.
+        final AtomicIntegerArray slots;
+
+        Table(String[] names, int[] hashes) {
+            this.names = names;
+            this.hashes = hashes;
+            this.slots = new AtomicIntegerArray(names.length * 2);
+        }
+    }
+
+    private static volatile Table table =
+        new Table(new String[256], new int[256]);
+    private static volatile int count = 0;
+
+    // Declared after the table so it exists when these are interned.
+    static final int THIS = intern("this");
+    static final int SUPER = intern("super");
+    static final int INIT = intern("init");
+
+    static int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    // Interns text[start, end) without copying it if it's already known.
+    static int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int id = find(table, hash, text, start, end);
+        return id >= 0 ? id : add(hash, text, start, end);
+    }
+
+    // The id of text[start, end) if it's already interned, or -1; never
+    // adds it.
+    static int lookup(CharSequence text, int start, int end) {
+        return find(table, hash(text, start, end), text, start, end);
+    }
+
+    private static int find(Table table, int hash, CharSequence text,
+                            int start, int end) {
+        AtomicIntegerArray slots = table.slots;
+        int mask = slots.length() - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots.getAcquire(slot) - 1;
+            if (id < 0) return -1;
+            if (table.hashes[id] == hash &&
+                matches(table.names[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private static synchronized int add(int hash, CharSequence text,
+                                        int start, int end) {
+        Table current = table;
+        // Another thread may have added it since.
+        int id = find(current, hash, text, start, end);
+        if (id >= 0) return id;
+
+        id = count;
+        if (id == current.names.length) {
+            Table bigger = new Table(Arrays.copyOf(current.names, id * 2),
+                Arrays.copyOf(current.hashes, id * 2));
+            for (int i = 0; i < id; i++) insert(bigger, i);
+            current = bigger;
+        }
+        current.names[id] = text.subSequence(start, end).toString();
+        current.hashes[id] = hash;
+        insert(current, id);
+        count = id + 1;
+        table = current;
+        return id;
+    }
+
+    static String name(int id) {
+        return table.names[id];
+    }
+
+    static int count() {
+        return count;
+    }
+
+    private static void insert(Table table, int id) {
+        AtomicIntegerArray slots = table.slots;
+        int mask = slots.length() - 1;
+        int slot = table.hashes[id] & mask;
+        while (slots.get(slot) != 0) slot = (slot + 1) & mask;
+        slots.setRelease(slot, id + 1);
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + text.charAt(i);
+        // Spread the low bits, which pick the slot.
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text,
+                                   int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    // Keywords by a perfect hash of their first two characters and length;
+    // no two keywords share a slot.
+    private static final String[] keywordNames = new String[32];
+    private static final TokenType[] keywordTypes = new TokenType[32];
+    private static final String[] spellings =
+        new String[TokenType.values().length];
+
+    static {
+        keyword("and",    TokenType.And);
+        keyword("class",  TokenType.Class);
+        keyword("else",   TokenType.Else);
+        keyword("false",  TokenType.False);
+        keyword("for",    TokenType.For);
+        keyword("fun",    TokenType.Fun);
+        keyword("if",     TokenType.If);
+        keyword("import", TokenType.Import);
+        keyword("nil",    TokenType.Nil);
+        keyword("or",     TokenType.Or);
+        keyword("print",  TokenType.Print);
+        keyword("return", TokenType.Return);
+        keyword("super",  TokenType.Super);
+        keyword("this",   TokenType.This);
+        keyword("true",   TokenType.True);
+        keyword("var",    TokenType.Var);
+        keyword("while",  TokenType.While);
+    }
+
+    private static void keyword(String name, TokenType type) {
+        int slot = keywordSlot(name, 0, name.length());
+        if (keywordNames[slot] != null) {
+            throw new IllegalStateException("Keyword hash collision.");
+        }
+        keywordNames[slot] = name;
+        keywordTypes[slot] = type;
+        spellings[type.ordinal()] = name;
+    }
+
+    private static int keywordSlot(CharSequence text, int start, int end) {
+        return (7 * text.charAt(start) + 14 * text.charAt(start + 1) +
+                (end - start)) & 31;
+    }
+
+    // The keyword text[start, end) spells, or null.
+    static TokenType keyword(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 2 || length > 6) return null;
+        int slot = keywordSlot(text, start, end);
+        String name = keywordNames[slot];
+        if (name == null || !matches(name, text, start, end)) return null;
+        return keywordTypes[slot];
+    }
+
+    static String spelling(TokenType keyword) {
+        return spellings[keyword.ordinal()];
+    }
+}
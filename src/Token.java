@@ -3,15 +3,28 @@ class Token {
     final String lexeme;
     final Object literal;
     final int line; 
+    // The interned name of identifiers, 'this' and 'super', or -1.
+    final int symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line,
+            isName(type) ? Symbols.intern(lexeme) : -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
+    }
+
+    static boolean isName(TokenType type) {
+        return type == TokenType.Identifier || type == TokenType.This ||
+            type == TokenType.Super;
     }
 
     public String toString() {
         return type + " " + lexeme + " " + literal;
     }
-}
\ No newline at end of file
+}
@@ -13,7 +13,7 @@ enum TokenType {
   Identifier, String, Number,
 
   // Keywords.
-  And, Class, Else, False, Fun, For, If, Nil, Or,
+  And, Class, Else, False, Fun, For, If, Import, Nil, Or,
   Print, Return, Super, This, True, Var, While,
 
   Eof
@@ -0,0 +1,83 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// DoubleKernels on the Vector API. Not part of buildall, since the module
+// is still incubating: build it with make buildvector, and run with
+// --add-modules jdk.incubator.vector to have DoubleArray pick it up.
+class VectorKernels extends DoubleKernels {
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    void add(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                .add(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                .intoArray(a, aOffset + i);
+        }
+        for (; i < length; i++) a[aOffset + i] += b[bOffset + i];
+    }
+
+    @Override
+    void scale(double[] a, int offset, int length, double factor) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, offset + i).mul(factor)
+                .intoArray(a, offset + i);
+        }
+        for (; i < length; i++) a[offset + i] *= factor;
+    }
+
+    @Override
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            sums = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                .fma(DoubleVector.fromArray(SPECIES, b, bOffset + i), sums);
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    @Override
+    double sum(double[] a, int offset, int length) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            sums = sums.add(DoubleVector.fromArray(SPECIES, a, offset + i));
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) sum += a[offset + i];
+        return sum;
+    }
+
+    @Override
+    double min(double[] a, int offset, int length) {
+        DoubleVector mins = DoubleVector.broadcast(SPECIES,
+            Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            mins = mins.min(DoubleVector.fromArray(SPECIES, a, offset + i));
+        }
+        double min = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < length; i++) min = Math.min(min, a[offset + i]);
+        return min;
+    }
+
+    @Override
+    double max(double[] a, int offset, int length) {
+        DoubleVector maxes = DoubleVector.broadcast(SPECIES,
+            Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < SPECIES.loopBound(length); i += SPECIES.length()) {
+            maxes = maxes.max(DoubleVector.fromArray(SPECIES, a, offset + i));
+        }
+        double max = maxes.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i++) max = Math.max(max, a[offset + i]);
+        return max;
+    }
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -10,7 +11,7 @@ public class GenerateAst {
             System.exit(64);
         }
         String outputDir = args[0];
-        defineAst(outputDir, "Expr", Arrays.asList(
+        List<String> exprTypes = Arrays.asList(
             "Assign   : Token name, Expr value",
             "Binary   : Expr left, Token operator, Expr right",
             "Call     : Expr callee, Token paren, List<Expr> arguments",
@@ -23,8 +24,8 @@ public class GenerateAst {
             "This     : Token keyword",
             "Unary    : Token operator, Expr right",
             "Variable : Token name"
-        ));
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        );
+        List<String> stmtTypes = Arrays.asList(
             "Block      : List<Stmt> statements",      
             "Class      : Token name, Expr.Variable superclass," +
                         " List<Stmt.Function> methods",
@@ -33,11 +34,15 @@ public class GenerateAst {
                         " List<Stmt> body",
             "If         : Expr condition, Stmt thenBranch," +
                         " Stmt elseBranch",
+            "Import     : Token keyword, Token path",
             "Print      : Expr expression",
             "Return     : Token keyword, Expr value",
             "Var        : Token name, Expr initializer",
-            "While      : Expr condition, Stmt body"
-        ));
+            "While      : Token keyword, Expr condition, Stmt body"
+        );
+        defineAst(outputDir, "Expr", exprTypes);
+        defineAst(outputDir, "Stmt", stmtTypes);
+        defineFlatAst(outputDir, exprTypes, stmtTypes);
     }
 
     private static void defineAst(
@@ -113,4 +118,343 @@ public class GenerateAst {
   
         writer.println("  }");
     }
+
+    // The flat encoding stores every node as NODE_SIZE ints in one array:
+    // the kind followed by one slot per field. Child nodes, tokens,
+    // constants and lists are all referred to by index, with -1 for null.
+    // It's how ProgramCache and HeapImage store programs. FlatResolver and
+    // AstPrinter can walk it directly; the interpreter still walks the
+    // object tree.
+    private static void defineFlatAst(String outputDir,
+        List<String> exprTypes, List<String> stmtTypes) throws IOException {
+        String path = outputDir + "/FlatAst.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        List<String[]> kinds = new ArrayList<>();
+        for (String type : exprTypes) kinds.add(flatKind("Expr", type));
+        for (String type : stmtTypes) kinds.add(flatKind("Stmt", type));
+
+        int maxFields = 0;
+        for (String[] kind : kinds) {
+            maxFields = Math.max(maxFields, kind.length - 2);
+        }
+
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.IdentityHashMap;");
+        writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println();
+        // Changes whenever the node definitions change, so serialised
+        // arenas from an older layout can be recognised.
+        int schema = (String.join("|", exprTypes) + "/" +
+            String.join("|", stmtTypes)).hashCode();
+
+        writer.println("class FlatAst {");
+        writer.println("  static final int NODE_SIZE = " + (maxFields + 1) + ";");
+        writer.println("  static final int SCHEMA = " + schema + ";");
+        writer.println();
+        writer.println("  // Node kinds.");
+        for (int i = 0; i < kinds.size(); i++) {
+            writer.println("  static final int " + kindName(kinds.get(i)) +
+                " = " + i + ";");
+        }
+
+        writer.println();
+        writer.println("  int[] nodes = new int[NODE_SIZE * 64];");
+        writer.println("  int nodeCount = 0;");
+        writer.println("  int[] lists = new int[64];");
+        writer.println("  int listsSize = 0;");
+        writer.println("  Token[] tokens = new Token[64];");
+        writer.println("  int tokenCount = 0;");
+        writer.println("  Object[] constants = new Object[16];");
+        writer.println("  int constantCount = 0;");
+        writer.println();
+        writer.println("  int kind(int node) {");
+        writer.println("    return nodes[node * NODE_SIZE];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int field(int node, int index) {");
+        writer.println("    return nodes[node * NODE_SIZE + 1 + index];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int listLength(int list) {");
+        writer.println("    return lists[list];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int listItem(int list, int index) {");
+        writer.println("    return lists[list + 1 + index];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  Token token(int index) {");
+        writer.println("    return index < 0 ? null : tokens[index];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  Object constant(int index) {");
+        writer.println("    return constants[index];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int addNode(int kind, int... fields) {");
+        writer.println("    if ((nodeCount + 1) * NODE_SIZE > nodes.length) {");
+        writer.println("      nodes = Arrays.copyOf(nodes, nodes.length * 2);");
+        writer.println("    }");
+        writer.println("    int base = nodeCount * NODE_SIZE;");
+        writer.println("    nodes[base] = kind;");
+        writer.println("    for (int i = 0; i < NODE_SIZE - 1; i++) {");
+        writer.println("      nodes[base + 1 + i] = i < fields.length ? fields[i] : -1;");
+        writer.println("    }");
+        writer.println("    return nodeCount++;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int addList(int[] items, int count) {");
+        writer.println("    while (listsSize + count + 1 > lists.length) {");
+        writer.println("      lists = Arrays.copyOf(lists, lists.length * 2);");
+        writer.println("    }");
+        writer.println("    int list = listsSize;");
+        writer.println("    lists[listsSize++] = count;");
+        writer.println("    System.arraycopy(items, 0, lists, listsSize, count);");
+        writer.println("    listsSize += count;");
+        writer.println("    return list;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int addToken(Token token) {");
+        writer.println("    if (tokenCount == tokens.length) {");
+        writer.println("      tokens = Arrays.copyOf(tokens, tokens.length * 2);");
+        writer.println("    }");
+        writer.println("    tokens[tokenCount] = token;");
+        writer.println("    return tokenCount++;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int addConstant(Object value) {");
+        writer.println("    if (constantCount == constants.length) {");
+        writer.println("      constants = Arrays.copyOf(constants, constants.length * 2);");
+        writer.println("    }");
+        writer.println("    constants[constantCount] = value;");
+        writer.println("    return constantCount++;");
+        writer.println("  }");
+
+        defineFlatEncoder(writer, kinds);
+        defineFlatDecoder(writer, kinds);
+
+        writer.println("}");
+        writer.close();
+    }
+
+    // Returns { baseName, className, field types... }.
+    private static String[] flatKind(String baseName, String type) {
+        String className = type.split(":")[0].trim();
+        String[] fields = type.split(":")[1].trim().split(", ");
+        String[] kind = new String[fields.length + 2];
+        kind[0] = baseName;
+        kind[1] = className;
+        for (int i = 0; i < fields.length; i++) {
+            kind[i + 2] = fields[i];
+        }
+        return kind;
+    }
+
+    private static String kindName(String[] kind) {
+        return kind[1].toUpperCase() + "_" + kind[0].toUpperCase();
+    }
+
+    private static void defineFlatEncoder(
+        PrintWriter writer, List<String[]> kinds) {
+        writer.println();
+        writer.println("  static class Encoder implements Expr.Visitor<Integer>,");
+        writer.println("                                  Stmt.Visitor<Integer> {");
+        writer.println("    final FlatAst ast;");
+        writer.println("    private final Map<Token, Integer> tokenIndex =");
+        writer.println("        new IdentityHashMap<>();");
+        writer.println("    private final Map<Object, Integer> constantIndex =");
+        writer.println("        new HashMap<>();");
+        writer.println();
+        writer.println("    Encoder(FlatAst ast) {");
+        writer.println("      this.ast = ast;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // Called for every encoded node, e.g. to carry resolution results");
+        writer.println("    // over to node indices.");
+        writer.println("    int encoded(Expr expr, int node) {");
+        writer.println("      return node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encoded(Stmt stmt, int node) {");
+        writer.println("      return node;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encode(Expr expr) {");
+        writer.println("      return expr == null ? -1 : expr.accept(this);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encode(Stmt stmt) {");
+        writer.println("      return stmt == null ? -1 : stmt.accept(this);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encodeStmts(List<? extends Stmt> stmts) {");
+        writer.println("      int[] items = new int[stmts.size()];");
+        writer.println("      for (int i = 0; i < items.length; i++) {");
+        writer.println("        items[i] = encode(stmts.get(i));");
+        writer.println("      }");
+        writer.println("      return ast.addList(items, items.length);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encodeExprs(List<Expr> exprs) {");
+        writer.println("      int[] items = new int[exprs.size()];");
+        writer.println("      for (int i = 0; i < items.length; i++) {");
+        writer.println("        items[i] = encode(exprs.get(i));");
+        writer.println("      }");
+        writer.println("      return ast.addList(items, items.length);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int encodeTokens(List<Token> tokens) {");
+        writer.println("      int[] items = new int[tokens.size()];");
+        writer.println("      for (int i = 0; i < items.length; i++) {");
+        writer.println("        items[i] = token(tokens.get(i));");
+        writer.println("      }");
+        writer.println("      return ast.addList(items, items.length);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int token(Token token) {");
+        writer.println("      if (token == null) return -1;");
+        writer.println("      Integer index = tokenIndex.get(token);");
+        writer.println("      if (index == null) {");
+        writer.println("        index = ast.addToken(token);");
+        writer.println("        tokenIndex.put(token, index);");
+        writer.println("      }");
+        writer.println("      return index;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    int constant(Object value) {");
+        writer.println("      Integer index = constantIndex.get(value);");
+        writer.println("      if (index == null) {");
+        writer.println("        index = ast.addConstant(value);");
+        writer.println("        constantIndex.put(value, index);");
+        writer.println("      }");
+        writer.println("      return index;");
+        writer.println("    }");
+
+        for (String[] kind : kinds) {
+            String baseName = kind[0];
+            String className = kind[1];
+            String param = baseName.toLowerCase();
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public Integer visit" + className + baseName + "(" +
+                baseName + "." + className + " " + param + ") {");
+            StringBuilder args = new StringBuilder();
+            for (int i = 2; i < kind.length; i++) {
+                String type = kind[i].split(" ")[0];
+                String name = param + "." + kind[i].split(" ")[1];
+                args.append(", ").append(encodeField(type, name));
+            }
+            String node = "ast.addNode(" + kindName(kind) + args + ")";
+            writer.println("      return encoded(" + param + ", " + node + ");");
+            writer.println("    }");
+        }
+
+        writer.println("  }");
+    }
+
+    private static String encodeField(String type, String name) {
+        switch (type) {
+            case "Token": return "token(" + name + ")";
+            case "Object": return "constant(" + name + ")";
+            case "List<Expr>": return "encodeExprs(" + name + ")";
+            case "List<Token>": return "encodeTokens(" + name + ")";
+        }
+        if (type.startsWith("List<")) return "encodeStmts(" + name + ")";
+        return "encode(" + name + ")";
+    }
+
+    private static void defineFlatDecoder(
+        PrintWriter writer, List<String[]> kinds) {
+        writer.println();
+        writer.println("  static class Decoder {");
+        writer.println("    final FlatAst ast;");
+        writer.println();
+        writer.println("    Decoder(FlatAst ast) {");
+        writer.println("      this.ast = ast;");
+        writer.println("    }");
+
+        writer.println();
+        writer.println("    // Called for every decoded expression.");
+        writer.println("    Expr decoded(int node, Expr expr) {");
+        writer.println("      return expr;");
+        writer.println("    }");
+
+        for (String baseName : new String[] { "Expr", "Stmt" }) {
+            writer.println();
+            writer.println("    " + baseName + " " + baseName.toLowerCase() +
+                "(int node) {");
+            writer.println("      if (node < 0) return null;");
+            writer.println("      switch (ast.kind(node)) {");
+            for (String[] kind : kinds) {
+                if (!kind[0].equals(baseName)) continue;
+                StringBuilder args = new StringBuilder();
+                for (int i = 2; i < kind.length; i++) {
+                    String type = kind[i].split(" ")[0];
+                    if (i > 2) args.append(", ");
+                    args.append(decodeField(type,
+                        "ast.field(node, " + (i - 2) + ")"));
+                }
+                writer.println("        case " + kindName(kind) + ":");
+                String created = "new " + baseName + "." + kind[1] + "(" + args + ")";
+                if (baseName.equals("Expr")) {
+                    writer.println("          return decoded(node, " + created + ");");
+                } else {
+                    writer.println("          return " + created + ";");
+                }
+            }
+            writer.println("      }");
+            writer.println("      throw new IllegalStateException(");
+            writer.println("          \"Not a " + baseName + " node: \" + node);");
+            writer.println("    }");
+        }
+
+        writer.println();
+        writer.println("    List<Stmt> program(int list) {");
+        writer.println("      return stmts(list);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    @SuppressWarnings(\"unchecked\")");
+        writer.println("    private <T extends Stmt> List<T> stmts(int list) {");
+        writer.println("      List<T> stmts = new ArrayList<>(ast.listLength(list));");
+        writer.println("      for (int i = 0; i < ast.listLength(list); i++) {");
+        writer.println("        stmts.add((T)stmt(ast.listItem(list, i)));");
+        writer.println("      }");
+        writer.println("      return stmts;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private List<Expr> exprs(int list) {");
+        writer.println("      List<Expr> exprs = new ArrayList<>(ast.listLength(list));");
+        writer.println("      for (int i = 0; i < ast.listLength(list); i++) {");
+        writer.println("        exprs.add(expr(ast.listItem(list, i)));");
+        writer.println("      }");
+        writer.println("      return exprs;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private List<Token> tokens(int list) {");
+        writer.println("      List<Token> tokens = new ArrayList<>(ast.listLength(list));");
+        writer.println("      for (int i = 0; i < ast.listLength(list); i++) {");
+        writer.println("        tokens.add(ast.token(ast.listItem(list, i)));");
+        writer.println("      }");
+        writer.println("      return tokens;");
+        writer.println("    }");
+        writer.println("  }");
+    }
+
+    private static String decodeField(String type, String slot) {
+        switch (type) {
+            case "Token": return "ast.token(" + slot + ")";
+            case "Object": return "ast.constant(" + slot + ")";
+            case "Expr": return "expr(" + slot + ")";
+            case "Stmt": return "stmt(" + slot + ")";
+            case "List<Expr>": return "exprs(" + slot + ")";
+            case "List<Token>": return "tokens(" + slot + ")";
+        }
+        if (type.startsWith("List<")) return "stmts(" + slot + ")";
+        return "(" + type + ")" + (type.startsWith("Expr") ? "expr(" : "stmt(") +
+            slot + ")";
+    }
 }
\ No newline at end of file